@@ -0,0 +1,146 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** Machines and messages shared by the benchmarks.
+ *  @author Anastasia Sukhorebraya
+ */
+class BenchUtils {
+
+    /** Names of the naval moving rotors, with their notches. */
+    private static final String[][] NAVAL_MOVING = {
+        {"I", "Q"}, {"II", "E"}, {"III", "V"}, {"IV", "J"}, {"V", "Z"},
+        {"VI", "ZM"}, {"VII", "ZM"}, {"VIII", "ZM"},
+    };
+
+    /** Number of pairs swapped by the plugboard. */
+    private static final int PLUGS = 6;
+
+    /** Names of the naval fixed rotors. */
+    private static final String[] NAVAL_FIXED = {"Beta", "Gamma"};
+
+    /** Return an alphabet of SIZE characters: the upper-case letters if
+     *  SIZE is 26, and otherwise a range of CJK ideographs, which are
+     *  unaffected by upper-casing. */
+    static Alphabet alphabet(int size) {
+        if (size == 26) {
+            return UPPER;
+        }
+        return new CharacterRange('\u4e00', (char) ('\u4e00' + size - 1));
+    }
+
+    /** Return a machine over an alphabet of SIZE characters with
+     *  NUMROTORS slots and PAWLS pawls, with all rotors inserted, set to
+     *  their 0 settings, and a plugboard swapping a few pairs.  The
+     *  naval rotors are used when SIZE is 26 and they suffice; otherwise
+     *  the wirings are random, drawn with SEED. */
+    static Machine machine(int size, int numRotors, int pawls, long seed) {
+        Alphabet alpha = alphabet(size);
+        Random random = new Random(seed);
+        boolean naval = size == 26 && pawls <= NAVAL_MOVING.length
+            && numRotors - pawls - 1 <= NAVAL_FIXED.length;
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[numRotors];
+        names[0] = "R";
+        rotors.add(new Reflector("R", naval
+                ? new Permutation(NAVALA.get("B"), alpha)
+                : new Permutation(reflectorCycles(alpha, random), alpha)));
+        for (int i = 1; i < numRotors; i++) {
+            names[i] = "S" + i;
+            int moving = i - (numRotors - pawls);
+            if (moving < 0) {
+                String cycles = naval ? NAVALA.get(NAVAL_FIXED[i - 1])
+                    : randomCycles(alpha, random);
+                rotors.add(new FixedRotor(names[i],
+                                          new Permutation(cycles, alpha)));
+            } else {
+                String cycles = naval ? NAVALA.get(NAVAL_MOVING[moving][0])
+                    : randomCycles(alpha, random);
+                String notches = naval ? NAVAL_MOVING[moving][1]
+                    : String.valueOf(alpha.toChar(random.nextInt(size)));
+                rotors.add(new MovingRotor(names[i],
+                                           new Permutation(cycles, alpha),
+                                           notches));
+            }
+        }
+        Machine mach = new Machine(alpha, numRotors, pawls, rotors);
+        mach.insertRotors(names);
+        char[] setting = new char[numRotors - 1];
+        for (int i = 0; i < setting.length; i++) {
+            setting[i] = alpha.toChar(0);
+        }
+        mach.setRotors(new String(setting));
+        String pairs = reflectorCycles(alpha, random);
+        mach.setPlugboard(new Permutation(pairs.substring(0, PLUGS * 4),
+                                          alpha));
+        return mach;
+    }
+
+    /** Return cycle notation for a random permutation of ALPHA drawn
+     *  from RANDOM. */
+    static String randomCycles(Alphabet alpha, Random random) {
+        int n = alpha.size();
+        int[] perm = shuffled(n, random);
+        boolean[] seen = new boolean[n];
+        StringBuilder result = new StringBuilder();
+        for (int start = 0; start < n; start++) {
+            if (seen[start]) {
+                continue;
+            }
+            result.append('(');
+            for (int c = start; !seen[c]; c = perm[c]) {
+                seen[c] = true;
+                result.append(alpha.toChar(c));
+            }
+            result.append(')');
+        }
+        return result.toString();
+    }
+
+    /** Return cycle notation for a random pairing of the characters of
+     *  ALPHA drawn from RANDOM, as for a reflector. */
+    static String reflectorCycles(Alphabet alpha, Random random) {
+        int[] order = shuffled(alpha.size(), random);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i + 1 < order.length; i += 2) {
+            result.append('(').append(alpha.toChar(order[i]))
+                .append(alpha.toChar(order[i + 1])).append(')');
+        }
+        return result.toString();
+    }
+
+    /** Return a random ordering of 0 .. N-1 drawn from RANDOM. */
+    static int[] shuffled(int n, Random random) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = result[i];
+            result[i] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    /** Return a message of LENGTH random characters from ALPHA drawn
+     *  with SEED, broken into lines of about LINE characters, with
+     *  blanks scattered through each line. */
+    static String message(Alphabet alpha, int length, int line, long seed) {
+        Random random = new Random(seed);
+        StringBuilder result = new StringBuilder(length + length / 4);
+        for (int i = 0; i < length; i++) {
+            result.append(alpha.toChar(random.nextInt(alpha.size())));
+            if (i % line == line - 1) {
+                result.append('\n');
+            } else if (random.nextInt(6) == 0) {
+                result.append(' ');
+            }
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,72 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of Machine stepping and conversion.
+ *  @author Anastasia Sukhorebraya
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MachineBench {
+
+    /** Rotor slots and pawls, as SLOTS:PAWLS. */
+    @Param({"5:3", "3:2", "7:4"})
+    public String rotors;
+
+    /** Size of the machine's alphabet. */
+    @Param({"26", "64", "90"})
+    public int alphabetSize;
+
+    /** Length of each line given to convert(String). */
+    @Param({"80", "4096"})
+    public int lineLength;
+
+    /** Build the machine and the message. */
+    @Setup
+    public void setUp() {
+        String[] counts = rotors.split(":");
+        _machine = BenchUtils.machine(alphabetSize,
+                                      Integer.parseInt(counts[0]),
+                                      Integer.parseInt(counts[1]), 61);
+        _line = BenchUtils.message(_machine.alphabet(), lineLength,
+                                   Integer.MAX_VALUE, 62);
+    }
+
+    /** Step the rotors once. */
+    @Benchmark
+    public void rotate() {
+        _machine.rotate();
+    }
+
+    /** Convert a single character index. */
+    @Benchmark
+    public int convertIndex() {
+        _next = _machine.convert(_next);
+        return _next;
+    }
+
+    /** Convert one line of text. */
+    @Benchmark
+    public String convertLine() {
+        return _machine.convert(_line);
+    }
+
+    /** The machine measured. */
+    private Machine _machine;
+
+    /** Line converted by convertLine. */
+    private String _line;
+
+    /** Index converted by convertIndex. */
+    private int _next;
+}
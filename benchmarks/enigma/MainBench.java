@@ -0,0 +1,102 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import static enigma.TestUtils.*;
+
+/** End-to-end benchmarks of Main on generated multi-megabyte inputs
+ *  using the naval rotors.
+ *  @author Anastasia Sukhorebraya
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MainBench {
+
+    /** Number of message characters in the input. */
+    @Param({"4000000"})
+    public int length;
+
+    /** Number of message characters between '*' lines. */
+    @Param({"400", "4000000"})
+    public int section;
+
+    /** Options passed to Main before the file names. */
+    @Param({"", "--segmented", "--parallel", "--sections"})
+    public String options;
+
+    /** Write the configuration and input files. */
+    @Setup
+    public void setUp() throws IOException {
+        _config = File.createTempFile("enigma", ".conf");
+        _input = File.createTempFile("enigma", ".in");
+        _output = File.createTempFile("enigma", ".out");
+        try (Writer w = new FileWriter(_config)) {
+            w.write(UPPER_STRING + "\n5 3\n");
+            String[][] moving = {{"I", "Q"}, {"II", "E"}, {"III", "V"}};
+            for (String[] rotor : moving) {
+                w.write(rotor[0] + " M" + rotor[1] + " "
+                        + NAVALA.get(rotor[0]) + "\n");
+            }
+            w.write("Beta N " + NAVALA.get("Beta") + "\n");
+            w.write("B R " + NAVALA.get("B") + "\n");
+        }
+        String msg = BenchUtils.message(UPPER, length, 60, 63);
+        try (Writer w = new FileWriter(_input)) {
+            int written = 0;
+            for (String line : msg.split("\n")) {
+                if (written % section < 60) {
+                    w.write("* B BETA I II III AAAA (AQ) (WE)\n");
+                }
+                w.write(line + "\n");
+                written += 60;
+            }
+        }
+    }
+
+    /** Remove the files written by setUp. */
+    @TearDown
+    public void tearDown() {
+        _config.delete();
+        _input.delete();
+        _output.delete();
+    }
+
+    /** Process the whole input. */
+    @Benchmark
+    public void process() {
+        String[] files = {_config.getPath(), _input.getPath(),
+                          _output.getPath()};
+        if (options.isEmpty()) {
+            Main.main(files);
+        } else {
+            String[] args = new String[files.length + 1];
+            args[0] = options;
+            System.arraycopy(files, 0, args, 1, files.length);
+            Main.main(args);
+        }
+    }
+
+    /** Generated configuration file. */
+    private File _config;
+
+    /** Generated input file. */
+    private File _input;
+
+    /** Output file. */
+    private File _output;
+}
@@ -0,0 +1,71 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of Permutation lookups.
+ *  @author Anastasia Sukhorebraya
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PermutationBench {
+
+    /** Number of lookups per benchmark invocation. */
+    static final int OPS = 1024;
+
+    /** Size of the alphabet permuted. */
+    @Param({"26", "64", "90"})
+    public int alphabetSize;
+
+    /** Build the permutation and the indices looked up. */
+    @Setup
+    public void setUp() {
+        Alphabet alpha = BenchUtils.alphabet(alphabetSize);
+        Random random = new Random(61);
+        _perm = new Permutation(BenchUtils.randomCycles(alpha, random),
+                                alpha);
+        _indices = new int[OPS];
+        for (int i = 0; i < OPS; i++) {
+            _indices[i] = random.nextInt(alphabetSize);
+        }
+    }
+
+    /** Apply the permutation to each index in turn. */
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public int permute() {
+        int sum = 0;
+        for (int p : _indices) {
+            sum += _perm.permute(p);
+        }
+        return sum;
+    }
+
+    /** Apply the inverse permutation to each index in turn. */
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public int invert() {
+        int sum = 0;
+        for (int c : _indices) {
+            sum += _perm.invert(c);
+        }
+        return sum;
+    }
+
+    /** The permutation measured. */
+    private Permutation _perm;
+
+    /** Indices looked up. */
+    private int[] _indices;
+}
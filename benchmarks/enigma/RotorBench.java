@@ -0,0 +1,78 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Benchmarks of Rotor conversions, with and without positional
+ *  tables.
+ *  @author Anastasia Sukhorebraya
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RotorBench {
+
+    /** Number of conversions per benchmark invocation. */
+    static final int OPS = 1024;
+
+    /** Size of the rotor's alphabet. */
+    @Param({"26", "64", "90"})
+    public int alphabetSize;
+
+    /** Whether the rotor uses positional tables. */
+    @Param({"true", "false"})
+    public boolean tables;
+
+    /** Build the rotor and the contacts converted. */
+    @Setup
+    public void setUp() {
+        Alphabet alpha = BenchUtils.alphabet(alphabetSize);
+        Random random = new Random(61);
+        _rotor = new MovingRotor("M", new Permutation(
+                BenchUtils.randomCycles(alpha, random), alpha), "");
+        _rotor.usePositionalTables(tables ? Long.MAX_VALUE : 0);
+        _rotor.set(random.nextInt(alphabetSize));
+        _contacts = new int[OPS];
+        for (int i = 0; i < OPS; i++) {
+            _contacts[i] = random.nextInt(alphabetSize);
+        }
+    }
+
+    /** Convert each contact forward. */
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public int convertForward() {
+        int sum = 0;
+        for (int p : _contacts) {
+            sum += _rotor.convertForward(p);
+        }
+        return sum;
+    }
+
+    /** Convert each contact backward. */
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public int convertBackward() {
+        int sum = 0;
+        for (int e : _contacts) {
+            sum += _rotor.convertBackward(e);
+        }
+        return sum;
+    }
+
+    /** The rotor measured. */
+    private Rotor _rotor;
+
+    /** Contacts converted. */
+    private int[] _contacts;
+}
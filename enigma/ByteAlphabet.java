@@ -0,0 +1,100 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The alphabet of all 256 byte values, used to encrypt binary data.
+ *  Byte B is the character (char) B, so that notches and rotor settings
+ *  may be written as Latin-1 characters.  Wirings cannot be written in
+ *  ordinary cycle notation, since many bytes are blanks, parentheses or
+ *  unprintable; see cycles for the hexadecimal notation used instead.
+ *  @author Anastasia Sukhorebraya
+ */
+class ByteAlphabet extends Alphabet {
+
+    /** Number of symbols. */
+    static final int SIZE = 256;
+
+    /** Token naming this alphabet in a configuration file. */
+    static final String NAME = "0x00-0xFF";
+
+    @Override
+    int size() {
+        return SIZE;
+    }
+
+    @Override
+    boolean contains(char ch) {
+        return ch < SIZE;
+    }
+
+    @Override
+    char toChar(int index) {
+        if (index < 0 || index >= SIZE) {
+            throw error("byte index out of range");
+        }
+        return (char) index;
+    }
+
+    @Override
+    int toInt(char ch) {
+        if (ch >= SIZE) {
+            throw error("character out of range");
+        }
+        return ch;
+    }
+
+    /** Return the table of the permutation of bytes given by CYCLES, in
+     *  cycle notation with each byte written as two hexadecimal digits,
+     *  e.g., "(00FF1A) (4142)".  Bytes in no cycle map to themselves.
+     *  Whitespace is ignored. */
+    static int[] cycles(String cycles) {
+        int[] result = new int[SIZE];
+        boolean[] used = new boolean[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            result[i] = i;
+        }
+        boolean open = false;
+        int first = -1, prev = -1;
+        for (int k = 0; k < cycles.length(); k++) {
+            char ch = cycles.charAt(k);
+            if (Character.isWhitespace(ch)) {
+                continue;
+            } else if (!open) {
+                if (ch != '(') {
+                    throw error("malformed cycle at position %d", k);
+                }
+                open = true;
+                first = prev = -1;
+                continue;
+            } else if (ch == ')') {
+                if (first >= 0) {
+                    result[prev] = first;
+                }
+                open = false;
+                continue;
+            }
+            int hi = Character.digit(ch, 16);
+            int lo = k + 1 < cycles.length()
+                ? Character.digit(cycles.charAt(k + 1), 16) : -1;
+            if (hi < 0 || lo < 0) {
+                throw error("bad byte in cycle at position %d", k);
+            }
+            int b = hi * 16 + lo;
+            if (used[b]) {
+                throw error("byte %02X repeated in cycles", b);
+            }
+            used[b] = true;
+            if (first < 0) {
+                first = b;
+            } else {
+                result[prev] = b;
+            }
+            prev = b;
+            k += 1;
+        }
+        if (open) {
+            throw error("unterminated cycle");
+        }
+        return result;
+    }
+}
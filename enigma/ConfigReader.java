@@ -0,0 +1,112 @@
+package enigma;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.NoSuchElementException;
+
+import static enigma.EnigmaException.*;
+
+/** A tokenizer over a configuration, holding a fixed buffer of BUFFER
+ *  characters whatever the size of the configuration.  Tokens are
+ *  separated by whitespace, as for a Scanner with its default
+ *  delimiter.  A token may be read as a String with next, or appended
+ *  to a StringBuilder with appendNext, so that long runs of tokens can
+ *  be collected without a String for each.
+ *  @author Anastasia Sukhorebraya
+ */
+class ConfigReader implements Closeable {
+
+    /** Size of the character buffer. */
+    static final int BUFFER = 1 << 13;
+
+    /** A ConfigReader reading from SOURCE. */
+    ConfigReader(Reader source) {
+        _source = source;
+    }
+
+    /** Return true iff there is another token. */
+    boolean hasNext() {
+        while (true) {
+            if (_pos == _limit && !fill()) {
+                return false;
+            }
+            if (!Character.isWhitespace(_buf[_pos])) {
+                return true;
+            }
+            _pos += 1;
+        }
+    }
+
+    /** Return the first character of the next token without reading
+     *  it, or -1 if there are no more tokens. */
+    int peek() {
+        return hasNext() ? _buf[_pos] : -1;
+    }
+
+    /** Read and return the next token. */
+    String next() {
+        StringBuilder token = new StringBuilder();
+        appendNext(token);
+        return token.toString();
+    }
+
+    /** Read the next token, appending it to OUT, and return its
+     *  length. */
+    int appendNext(StringBuilder out) {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int length = 0;
+        do {
+            int end = _pos;
+            while (end < _limit && !Character.isWhitespace(_buf[end])) {
+                end += 1;
+            }
+            out.append(_buf, _pos, end - _pos);
+            length += end - _pos;
+            _pos = end;
+        } while (_pos == _limit && fill());
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _source.close();
+    }
+
+    /** Refill the buffer, which must be exhausted.  Return false iff the
+     *  input has ended. */
+    private boolean fill() {
+        if (_ended) {
+            return false;
+        }
+        try {
+            int n;
+            do {
+                n = _source.read(_buf);
+            } while (n == 0);
+            _pos = 0;
+            _limit = Math.max(n, 0);
+            _ended = n < 0;
+            return !_ended;
+        } catch (IOException excp) {
+            throw error("configuration failed: %s", excp.getMessage());
+        }
+    }
+
+    /** Source of characters. */
+    private final Reader _source;
+
+    /** Buffered characters from _source. */
+    private final char[] _buf = new char[BUFFER];
+
+    /** Position of the next unread character in _buf. */
+    private int _pos;
+
+    /** Number of valid characters in _buf. */
+    private int _limit;
+
+    /** True once _source has ended. */
+    private boolean _ended;
+}
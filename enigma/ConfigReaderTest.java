@@ -0,0 +1,38 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the ConfigReader class.
+ *  @author Anastasia Sukhorebraya
+ */
+public class ConfigReaderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testConfigReader() {
+        StringBuilder text = new StringBuilder(" 5\t3\n");
+        for (int i = 0; i < ConfigReader.BUFFER; i++) {
+            text.append('(');
+        }
+        text.append(")\r\n (AB)");
+        ConfigReader config =
+            new ConfigReader(new StringReader(text.toString()));
+        assertEquals("5", config.next());
+        assertEquals("3", config.next());
+        assertEquals('(', config.peek());
+        StringBuilder cycles = new StringBuilder();
+        assertEquals(ConfigReader.BUFFER + 1, config.appendNext(cycles));
+        assertEquals("(AB)", config.next());
+        assertFalse(config.hasNext());
+        assertEquals(-1, config.peek());
+    }
+}
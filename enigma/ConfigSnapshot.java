@@ -0,0 +1,338 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** Compiled machine configurations.  A snapshot holds everything read
+ *  from a configuration file, with each rotor's wiring as a pair of
+ *  tables and its notches as a bitset, so that loading one involves
+ *  no parsing.  Rotors are found by binary search of an index sorted
+ *  by name, and are still built only when first used.  Loading reads
+ *  only the header and the index, 4 bytes a rotor, and never touches
+ *  the wirings of rotors that are not used.
+ *
+ *  A snapshot is mapped read-only rather than read, and its rotors'
+ *  permutations are MappedPermutations reading their tables in place,
+ *  so that the many processes of a host that load one snapshot share a
+ *  single copy of its wirings.  compile replaces a snapshot by renaming
+ *  a new file over it, never by rewriting it, so that processes still
+ *  mapping the old one are unaffected.
+ *
+ *  A snapshot records the size and modification time, in nanoseconds,
+ *  of the file it was compiled from, and is used only while these
+ *  match; otherwise load returns null, and the caller reads the
+ *  configuration file as usual.  The header and index are checked
+ *  against a checksum when loaded, and each rotor record against its
+ *  own checksum when the rotor is first built.
+ *
+ *  The layout, in big-endian order, is a header of
+ *      MAGIC, VERSION (ints), source size, source time (longs), and
+ *      the CRC-32 of everything from the alphabet token to the end of
+ *      the index (int),
+ *  followed by
+ *      the alphabet token as a string, the numbers of rotor slots and
+ *      pawls, the alphabet's size N, and the number of rotors C (ints),
+ *      the index: the positions in the file of the C rotor records,
+ *      in order of rotor name (ints),
+ *  and the rotor records, each holding the rotor's name as a string,
+ *  its type ('M', 'N' or 'R') as a byte, its notch bitset as
+ *  (N + 63) / 64 longs, its wiring as N chars, followed by its inverse
+ *  as N more, and the CRC-32 of the record up to this point (int).  A
+ *  string is an int length followed by its chars.
+ *  @author Anastasia Sukhorebraya
+ */
+class ConfigSnapshot {
+
+    /** First word of every snapshot: "ENGS". */
+    static final int MAGIC = 0x454e4753;
+
+    /** Version of the layout written by compile. */
+    static final int VERSION = 4;
+
+    /** Return the stamp of the configuration file SOURCE: its size and
+     *  its modification time, in nanoseconds. */
+    static long[] stamp(Path source) throws IOException {
+        return new long[] {
+            Files.size(source),
+            Files.getLastModifiedTime(source).to(TimeUnit.NANOSECONDS)
+        };
+    }
+
+    /** Write to TARGET a snapshot of SPEC, read from a configuration
+     *  with stamp STAMP whose alphabet token was ALPHABET and whose
+     *  rotors are named NAMES.  Every rotor is built, so that errors in
+     *  any of them are reported now. */
+    static void compile(Path target, long[] stamp, String alphabet,
+                        MachineSpec spec, Collection<String> names) {
+        Alphabet alpha = spec.alphabet();
+        int size = alpha.size();
+        String[] sorted = names.toArray(new String[0]);
+        Arrays.sort(sorted);
+        ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        CRC32 record = new CRC32();
+        try (DataOutputStream head = new DataOutputStream(prefix);
+             DataOutputStream out = new DataOutputStream(
+                 new CheckedOutputStream(records, record))) {
+            writeString(head, alphabet);
+            head.writeInt(spec.numRotors());
+            head.writeInt(spec.numPawls());
+            head.writeInt(size);
+            head.writeInt(sorted.length);
+            int base = HEADER + head.size() + 4 * sorted.length;
+            long[] notches = new long[words(size)];
+            for (String name : sorted) {
+                Rotor rotor = spec.rotor(name);
+                head.writeInt(base + out.size());
+                record.reset();
+                writeString(out, name);
+                out.writeByte(rotor.rotates() ? 'M'
+                              : rotor.reflecting() ? 'R' : 'N');
+                Arrays.fill(notches, 0);
+                boolean[] table = rotor.notchTable();
+                for (int i = 0; table != null && i < size; i += 1) {
+                    if (table[i]) {
+                        notches[i >>> 6] |= 1L << i;
+                    }
+                }
+                for (long word : notches) {
+                    out.writeLong(word);
+                }
+                Permutation perm = rotor.permutation();
+                for (int i = 0; i < size; i += 1) {
+                    out.writeChar(perm.permute(i));
+                }
+                for (int i = 0; i < size; i += 1) {
+                    out.writeChar(perm.invert(i));
+                }
+                out.writeInt((int) record.getValue());
+            }
+        } catch (IOException excp) {
+            throw error("can't compile snapshot: %s", excp.getMessage());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(prefix.toByteArray());
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.putInt(MAGIC).putInt(VERSION);
+        header.putLong(stamp[0]).putLong(stamp[1]);
+        header.putInt((int) crc.getValue());
+        Path temp = null;
+        try {
+            Path dir = target.toAbsolutePath().getParent();
+            temp = Files.createTempFile(dir, target.getFileName() + ".",
+                                        ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                out.write(header.array());
+                prefix.writeTo(out);
+                records.writeTo(out);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+        } catch (IOException excp) {
+            throw error("can't write %s: %s", target, excp.getMessage());
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException excp) {
+                    /* Ignore: the write has already failed. */
+                }
+            }
+        }
+    }
+
+    /** Return a MachineSpec loaded from the snapshot SNAPSHOT of
+     *  configuration file SOURCE, or null if the snapshot is missing,
+     *  stale, of another version, or has a damaged header or index. */
+    static MachineSpec load(Path snapshot, Path source) {
+        ByteBuffer buf;
+        long[] stamp;
+        try (FileChannel channel = FileChannel.open(snapshot)) {
+            stamp = stamp(source);
+            if (channel.size() < HEADER || channel.size() > MAX_SIZE) {
+                return null;
+            }
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                              channel.size());
+        } catch (IOException excp) {
+            return null;
+        }
+        if (buf.getInt() != MAGIC || buf.getInt() != VERSION
+            || buf.getLong() != stamp[0] || buf.getLong() != stamp[1]) {
+            return null;
+        }
+        int check = buf.getInt();
+        try {
+            String token = readString(buf);
+            int numRotors = buf.getInt();
+            int pawls = buf.getInt();
+            int size = buf.getInt();
+            int count = buf.getInt();
+            if (size < 0 || count < 0 || count > buf.remaining() / 4) {
+                return null;
+            }
+            int index = buf.position();
+            CRC32 crc = new CRC32();
+            crc.update(buf.duplicate().position(HEADER)
+                       .limit(index + 4 * count));
+            if (check != (int) crc.getValue()) {
+                return null;
+            }
+            Alphabet alpha = Main.alphabet(token);
+            if (size != alpha.size()) {
+                return null;
+            }
+            return new MachineSpec(alpha, numRotors, pawls,
+                                   new Library(buf, index, count, size));
+        } catch (BufferUnderflowException excp) {
+            return null;
+        }
+    }
+
+    /** The rotors of a loaded snapshot.  A rotor whose record does not
+     *  match its checksum is reported as an error when built. */
+    private static final class Library implements RotorSource {
+        /** The COUNT rotors of alphabet size SIZE in DATA, whose index
+         *  is at position INDEX. */
+        Library(ByteBuffer data, int index, int count, int size) {
+            _data = data;
+            _index = index;
+            _count = count;
+            _size = size;
+        }
+
+        @Override
+        public boolean contains(String name) {
+            return find(name) >= 0;
+        }
+
+        @Override
+        public Rotor build(String name, Alphabet alpha) {
+            int k = find(name);
+            if (k < 0) {
+                return null;
+            }
+            int start = k;
+            int end = k + 4 + 2 * name.length() + 1 + 8 * words(_size)
+                + 4 * _size;
+            if (end + 4 > _data.limit()) {
+                throw error("damaged snapshot: rotor %s", name);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(_data.duplicate().position(start).limit(end));
+            if (_data.getInt(end) != (int) crc.getValue()) {
+                throw error("damaged snapshot: rotor %s", name);
+            }
+            k += 4 + 2 * name.length();
+            char type = (char) _data.get(k);
+            k += 1;
+            StringBuilder notches = new StringBuilder();
+            for (int w = 0; w < words(_size); w += 1, k += 8) {
+                long word = _data.getLong(k);
+                while (word != 0) {
+                    int bit = Long.numberOfTrailingZeros(word);
+                    notches.append(alpha.toChar(w * 64 + bit));
+                    word &= word - 1;
+                }
+            }
+            Permutation perm =
+                new MappedPermutation(_data, k, k + 2 * _size, alpha);
+            if (type == 'M') {
+                return new MovingRotor(name, perm, notches.toString());
+            } else if (type == 'N') {
+                return new FixedRotor(name, perm);
+            } else {
+                return new Reflector(name, perm);
+            }
+        }
+
+        /** Return the position of the record of the rotor named NAME,
+         *  or -1 if there is none. */
+        private int find(String name) {
+            int lo = 0, hi = _count - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int at = _data.getInt(_index + 4 * mid);
+                int cmp = compare(name, at);
+                if (cmp == 0) {
+                    return at;
+                } else if (cmp < 0) {
+                    hi = mid - 1;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            return -1;
+        }
+
+        /** Return the result of comparing NAME with the string at
+         *  position AT, as for String.compareTo. */
+        private int compare(String name, int at) {
+            int length = _data.getInt(at);
+            int n = Math.min(length, name.length());
+            for (int i = 0; i < n; i += 1) {
+                int diff = name.charAt(i) - _data.getChar(at + 4 + 2 * i);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return name.length() - length;
+        }
+
+        /** The mapped snapshot, read only through absolute gets. */
+        private final ByteBuffer _data;
+        /** Position of the index in _data. */
+        private final int _index;
+        /** Number of rotors. */
+        private final int _count;
+        /** Size of the alphabet. */
+        private final int _size;
+    }
+
+    /** Return the number of longs in a bitset of SIZE bits. */
+    private static int words(int size) {
+        return (size + 63) >>> 6;
+    }
+
+    /** Write S to OUT as a string. */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        out.writeInt(s.length());
+        out.writeChars(s);
+    }
+
+    /** Read and return a string from BUF. */
+    private static String readString(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0 || length > buf.remaining() / 2) {
+            throw new BufferUnderflowException();
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i += 1) {
+            chars[i] = buf.getChar();
+        }
+        return new String(chars);
+    }
+
+    /** Largest snapshot that can be mapped, in bytes. */
+    private static final long MAX_SIZE = Integer.MAX_VALUE;
+
+    /** Size of the header, in bytes. */
+    private static final int HEADER = 28;
+}
@@ -0,0 +1,85 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the ConfigSnapshot class.
+ *  @author Anastasia Sukhorebraya
+ */
+public class ConfigSnapshotTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testConfigSnapshot() throws IOException {
+        Path source = Files.createTempFile("enigma", ".conf");
+        Path snapshot = Files.createTempFile("enigma", ".snap");
+        try {
+            Files.writeString(source, "A-Z 5 3\n");
+            long[] stamp = ConfigSnapshot.stamp(source);
+            MachineSpec spec = navalSpec();
+            ConfigSnapshot.compile(snapshot, stamp, "A-Z", spec,
+                List.of("III", "B", "I", "BETA", "II"));
+            MachineSpec loaded = ConfigSnapshot.load(snapshot, source);
+            assertNotNull(loaded);
+            assertEquals(5, loaded.numRotors());
+            assertEquals(3, loaded.numPawls());
+            assertNull(loaded.rotor("IV"));
+            Permutation mapped = loaded.rotor("I").permutation();
+            Permutation original = spec.rotor("I").permutation();
+            assertTrue(mapped instanceof MappedPermutation);
+            assertNull(loaded.rotor("I").forwardTable());
+            for (int i = 0; i < UPPER.size(); i++) {
+                assertEquals(original.permute(i), mapped.permute(i));
+                assertEquals(original.invert(i), mapped.invert(i));
+            }
+            Machine mach = loaded.newMachine();
+            mach.insertRotors(new String[] {"B", "BETA", "I", "II", "III"});
+            mach.setRotors("AAAA");
+            mach.setPlugboard(new Permutation("", UPPER));
+            assertEquals("ILBDA AMTAZ", mach.convert("Hello world"));
+
+            byte[] bytes = Files.readAllBytes(snapshot);
+            bytes[bytes.length - 10] ^= 1;
+            Files.write(snapshot, bytes);
+            MachineSpec damaged = ConfigSnapshot.load(snapshot, source);
+            assertNotNull(damaged);
+            assertNotNull(damaged.rotor("I"));
+            try {
+                damaged.rotor("III");
+                fail("damaged rotor record accepted");
+            } catch (EnigmaException excp) {
+                /* Reported only when the rotor is first built. */
+            }
+
+            FileTime time = Files.getLastModifiedTime(source);
+            Files.writeString(source, "A-Z 5 2\n");
+            Files.setLastModifiedTime(source,
+                FileTime.fromMillis(time.toMillis() + 1000));
+            assertNull(ConfigSnapshot.load(snapshot, source));
+            Files.writeString(source, "A-Z 5 3 \n");
+            assertNull(ConfigSnapshot.load(snapshot, source));
+            try (DirectoryStream<Path> temps = Files.newDirectoryStream(
+                     snapshot.toAbsolutePath().getParent(),
+                     snapshot.getFileName() + ".*.tmp")) {
+                assertFalse(temps.iterator().hasNext());
+            }
+        } finally {
+            Files.delete(source);
+            Files.delete(snapshot);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.error;
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
@@ -11,34 +13,63 @@ class ExtraCredit extends Alphabet {
     /** An alphabet consisting of all characters between FIRST and LAST,
      *  inclusive. @param a a. */
     ExtraCredit(String a) {
-        _a = a;
         if (a.isEmpty()) {
             throw error("empty range of characters");
         }
+        _chars = a.toCharArray();
+        _pages = new int[PAGES][];
+        for (int i = 0; i < _chars.length; i++) {
+            char ch = _chars[i];
+            int[] page = _pages[ch >>> PAGE_BITS];
+            if (page == null) {
+                page = new int[1 << PAGE_BITS];
+                Arrays.fill(page, -1);
+                _pages[ch >>> PAGE_BITS] = page;
+            }
+            if (page[ch & PAGE_MASK] == -1) {
+                page[ch & PAGE_MASK] = i;
+            }
+        }
     }
 
     @Override
     int size() {
-        return _a.length();
+        return _chars.length;
     }
 
     @Override
     boolean contains(char ch) {
-        return _a.indexOf(ch) == -1;
+        return toInt(ch) != -1;
     }
 
     @Override
     char toChar(int index) {
-        return _a.charAt(index);
+        return _chars[index];
     }
 
+    /** Returns the index of CH in this alphabet, or -1 if it is not in
+     *  the alphabet. */
     @Override
     int toInt(char ch) {
-        return _a.indexOf(ch);
+        int[] page = _pages[ch >>> PAGE_BITS];
+        return page == null ? -1 : page[ch & PAGE_MASK];
     }
 
-    /** Range of characters in this Alphabet. */
-    private String _a;
+    /** Number of low-order bits of a character that index a page. */
+    private static final int PAGE_BITS = 8;
 
-}
+    /** Mask selecting the page index of a character. */
+    private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+
+    /** Number of pages covering all characters. */
+    private static final int PAGES = 1 << (Character.SIZE - PAGE_BITS);
 
+    /** Character at each index. */
+    private final char[] _chars;
+
+    /** Index of each character, in pages of 1 << PAGE_BITS characters
+     *  selected by the high-order bits; null pages hold no characters
+     *  of this alphabet, and -1 entries mark absent characters. */
+    private final int[][] _pages;
+
+}
@@ -13,4 +13,11 @@ class FixedRotor extends Rotor {
 
         super(name, perm);
     }
+
+    @Override
+    Rotor copy() {
+        Rotor result = new FixedRotor(name(), permutation());
+        result.set(setting());
+        return result;
+    }
 }
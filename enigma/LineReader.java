@@ -0,0 +1,142 @@
+package enigma;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Reader;
+
+import static enigma.EnigmaException.*;
+
+/** A line scanner over a Reader, holding a fixed buffer of BUFFER
+ *  characters whatever the lengths of the lines.  Lines end as for
+ *  Scanner.nextLine: at CR LF, or any of CR, LF, NEL, LS and PS.  A
+ *  terminator at the very end of the input does not begin another
+ *  line.  Lines may be read whole with readLine, or
+ *  piecewise, without copying, with nextChunk.
+ *
+ *  Before blocking for more input, the reader flushes its output
+ *  Flushable, so that results appear as soon as the input that
+ *  produced them has been processed, but files are flushed only once
+ *  per buffer.
+ *  @author Anastasia Sukhorebraya
+ */
+class LineReader implements Closeable {
+
+    /** Size of the character buffer. */
+    static final int BUFFER = 1 << 16;
+
+    /** A LineReader reading from SOURCE, flushing OUTPUT (if not null)
+     *  before it blocks. */
+    LineReader(Reader source, Flushable output) {
+        _source = source;
+        _output = output;
+    }
+
+    /** Return true iff there is another line to read. */
+    boolean hasLine() {
+        return _pos < _limit || fill();
+    }
+
+    /** Return the next character of the current line without reading
+     *  it, or -1 if the line has no more characters. */
+    int peek() {
+        if (!hasLine() || isTerminator(_buf[_pos])) {
+            return -1;
+        }
+        return _buf[_pos];
+    }
+
+    /** Read the rest of the current line and its terminator, returning
+     *  the characters read. */
+    String readLine() {
+        StringBuilder line = new StringBuilder();
+        for (int n = nextChunk(); n >= 0; n = nextChunk()) {
+            line.append(_buf, _start, n);
+        }
+        return line.toString();
+    }
+
+    /** Read the next piece of the current line, returning its length N
+     *  and leaving it in buffer()[start() .. start()+N-1] until the next
+     *  call.  Once the line is exhausted, reads its terminator instead
+     *  and returns -1. */
+    int nextChunk() {
+        if (!hasLine()) {
+            return -1;
+        }
+        int end = _pos;
+        while (end < _limit && !isTerminator(_buf[end])) {
+            end += 1;
+        }
+        if (end > _pos) {
+            _start = _pos;
+            _pos = end;
+            return end - _start;
+        }
+        char term = _buf[_pos];
+        _pos += 1;
+        if (term == '\r' && hasLine() && _buf[_pos] == '\n') {
+            _pos += 1;
+        }
+        return -1;
+    }
+
+    /** Return the buffer holding the last chunk. */
+    char[] buffer() {
+        return _buf;
+    }
+
+    /** Return the index of the last chunk in buffer(). */
+    int start() {
+        return _start;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _source.close();
+    }
+
+    /** Refill the buffer, which must be exhausted, flushing _output first
+     *  if that might block.  Return false iff the input has ended. */
+    private boolean fill() {
+        if (_limit < 0) {
+            return false;
+        }
+        try {
+            if (_output != null && !_source.ready()) {
+                _output.flush();
+            }
+            int n = _source.read(_buf);
+            _pos = 0;
+            _limit = n;
+            return n > 0 || n == 0 && fill();
+        } catch (IOException excp) {
+            throw error("input failed: %s", excp.getMessage());
+        }
+    }
+
+    /** Return true iff CH ends a line. */
+    private static boolean isTerminator(char ch) {
+        return ch <= '\r' ? ch == '\n' || ch == '\r'
+            : ch == '\u0085' || ch == '\u2028' || ch == '\u2029';
+    }
+
+    /** Source of characters. */
+    private final Reader _source;
+
+    /** Flushed before any read that might block, or null. */
+    private final Flushable _output;
+
+    /** Buffered characters from _source. */
+    private final char[] _buf = new char[BUFFER];
+
+    /** Position of the next unread character in _buf. */
+    private int _pos;
+
+    /** Number of valid characters in _buf, or -1 once _source has
+     *  ended. */
+    private int _limit;
+
+    /** Index of the last chunk in _buf. */
+    private int _start;
+}
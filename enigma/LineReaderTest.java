@@ -0,0 +1,61 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the LineReader class.
+ *  @author Anastasia Sukhorebraya
+ */
+public class LineReaderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return the lines of TEXT as read by a LineReader. */
+    private ArrayList<String> lines(String text) {
+        LineReader in = new LineReader(new StringReader(text), null);
+        ArrayList<String> result = new ArrayList<>();
+        while (in.hasLine()) {
+            result.add(in.readLine());
+        }
+        return result;
+    }
+
+    @Test
+    public void testTerminators() {
+        assertEquals(0, lines("").size());
+        assertEquals(List.of("A", "B"), lines("A\nB\n"));
+        assertEquals(List.of("A", "B"), lines("A\r\nB"));
+        assertEquals(List.of("A", "", "B", ""),
+                     lines("A\r\rB\n\n"));
+    }
+
+    @Test
+    public void testLongLineInChunks() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 3 * LineReader.BUFFER; i++) {
+            text.append((char) ('A' + i % 26));
+        }
+        text.append("\n*");
+        LineReader in = new LineReader(new StringReader(text.toString()),
+                                       null);
+        int total = 0;
+        for (int n = in.nextChunk(); n >= 0; n = in.nextChunk()) {
+            assertTrue(n <= LineReader.BUFFER);
+            assertEquals('A' + total % 26, in.buffer()[in.start()]);
+            total += n;
+        }
+        assertEquals(3 * LineReader.BUFFER, total);
+        assertEquals('*', in.peek());
+        assertEquals("*", in.readLine());
+        assertFalse(in.hasLine());
+    }
+}
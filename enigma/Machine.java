@@ -1,29 +1,105 @@
 package enigma;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.Scanner;
 
 import static enigma.EnigmaException.*;
 
-/** Class that represents a complete enigma machine.
+/** Class that represents a complete enigma machine.  The alphabet and
+ *  rotor library come from a shared, immutable MachineSpec; a Machine
+ *  holds only its own copies of the rotors in use, their settings and
+ *  the plugboard, so Machines built to one spec are independent.
  *  @author Anastasia Sukhorebraya
  */
 class Machine {
 
+    /** Number of characters stepped and converted together by the bulk
+     *  conversions. */
+    static final int BLOCK = 256;
+    /** Default budget for setTabulated, in bytes. */
+    static final long STATE_TABLE_BUDGET = 1 << 20;
+    /** Approximate bytes per state of a state table beyond its
+     *  conversions: successor, packed settings and index entry. */
+    private static final int STATE_OVERHEAD = 80;
+
+    /** Shared description of this machine and its available rotors. */
+    private final MachineSpec _spec;
     /** ALPHABET shared by ALL rotors. */
     private final Alphabet _alphabet;
+    /** Size of _alphabet. */
+    private final int _size;
     /** Number of ROTORS int. */
     private int _numRotors;
     /** Number of PAWLS int. */
     private int _numPawls;
-    /** A HashMap of ALL rotors. */
-    private HashMap<String, Object> mapRotorObjects;
     /**List to keep track of all rotors being used. */
     private ArrayList<Rotor> _rotorsInUse;
     /**Permutation to store the plugboard. */
     private Permutation _plugboard;
+    /** Number of leftmost rotors in use that never move, and so are
+     *  folded into _folded. */
+    private int _numFolded;
+    /** Combined conversion through the non-moving rotors, the reflector,
+     *  and back, indexed by the signal entering them from the right.
+     *  Never modified, so that copies may share it. */
+    private int[] _folded;
+    /** True iff the rotors have been inserted or set since _folded and
+     *  _numFolded were computed. */
+    private boolean _foldStale;
+    /** True iff convert(int) reuses _segment between notch turnovers. */
+    private boolean _segmented;
+    /** Combined conversion through every rotor left of the rightmost one
+     *  at their current settings, or null if it must be rebuilt. */
+    private int[] _segment;
+    /** Most bytes a state table may take, or 0 if I never tabulate. */
+    private long _tableBudget;
+    /** Conversion of each character in each reachable rotor state,
+     *  indexed by state * alphabet size + character, or null if it must
+     *  be rebuilt. */
+    private int[] _table;
+    /** State following each state in _table. */
+    private int[] _next;
+    /** Packed rotor settings (see settingsKey) of each state in
+     *  _table. */
+    private long[] _keys;
+    /** Index in _table of each packed rotor setting. */
+    private HashMap<Long, Integer> _stateIds;
+    /** True iff the states of my rotors might not fit within
+     *  _tableBudget. */
+    private boolean _tableFailed;
+    /** Current state in _table, or -1 if the rotors hold the current
+     *  settings.  While it is not -1, the rotors are out of date. */
+    private int _state = -1;
+    /** The rotors in use, by slot, for stepping. */
+    private Rotor[] _slots;
+    /** Setting of the rotor in each slot. */
+    private int[] _positions;
+    /** Notch table (see Rotor.notchTable) of the rotor in each slot, with
+     *  an all-false table for rotors without notches. */
+    private boolean[][] _notches;
+    /** Whether the rotor in each slot moves when stepped. */
+    private boolean[] _moves;
+    /** All-false notch table for slots whose rotors have no notches,
+     *  shared with my copies, or null. */
+    private boolean[] _noNotches;
+    /** True iff the rotors may have been set or replaced other than by
+     *  rotate, so that the stepping state must be reloaded. */
+    private boolean _slotsStale = true;
+    /** Rotor offsets (setting * alphabet size) of each slot for each
+     *  character of the block in convertBlock, or null. */
+    private int[][] _schedule;
+    /** Scratch indices for the bulk conversions, or null. */
+    private int[] _block;
+    /** Characters converted since my counts were last reported. */
+    private long _converted;
+    /** Advances of the rotor in each slot, counted from the right, since
+     *  my counts were last reported. */
+    private long[] _advances;
+    /** Double steps since my counts were last reported. */
+    private long _doubleSteps;
 
 
     /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
@@ -31,26 +107,129 @@ class Machine {
      *  available _rotorsInUse. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
-        if (pawls >= numRotors) {
-            throw new EnigmaException("Can't have PAWLS >= ROTORS.");
-        }
+        this(new MachineSpec(alpha, numRotors, pawls, allRotors));
+    }
 
-        mapRotorObjects = new HashMap<String, Object>();
-        _rotorsInUse = new ArrayList<Rotor>();
+    /** A new Enigma machine built to SPEC, with no rotors inserted. */
+    Machine(MachineSpec spec) {
+        _spec = spec;
         _rotorsInUse = new ArrayList<Rotor>();
+        _alphabet = spec.alphabet();
+        _size = _alphabet.size();
+        _numRotors = spec.numRotors();
+        _numPawls = spec.numPawls();
+        _advances = new long[_numRotors];
+    }
 
+    /** Select whether convert(int) composes the rotors left of the
+     *  rightmost one into a single table that is reused until one of
+     *  them moves, according to SEGMENTED.  Output is the same either
+     *  way. */
+    void setSegmented(boolean segmented) {
+        _segmented = segmented;
+        _segment = null;
+    }
+
+    /** Select whether convert(int) runs from a table of the conversion
+     *  and successor of every rotor state reachable from the current
+     *  settings, built when first needed, so that each character costs
+     *  two array accesses whatever the number of rotors.  Tables are
+     *  used only if every state of the moving rotors would fit in about
+     *  BUDGET bytes, and are rebuilt whenever the rotors are set, so they
+     *  pay off for small alphabets and long messages.  A BUDGET of 0
+     *  turns tabulation off.  Output is the same either way, but while
+     *  tabulating, advances of rotors other than the rightmost are not
+     *  counted in Metrics. */
+    void setTabulated(long budget) {
+        syncRotors();
+        _tableBudget = budget;
+        dropTable();
+    }
+
+    /** Return a new machine in the same state as me whose rotors are
+     *  copies of mine, so that the two may be used independently.  The
+     *  copy shares my composition of the non-moving rotors and my state
+     *  table, if any, which are never modified. */
+    Machine copy() {
+        syncRotors();
+        Machine result = new Machine(_spec);
+        for (Rotor r : _rotorsInUse) {
+            result._rotorsInUse.add(r.copy());
+        }
+        result._numFolded = _numFolded;
+        result._folded = _folded;
+        result._foldStale = _foldStale;
+        result._noNotches = _noNotches;
+        result._plugboard = _plugboard;
+        result._segmented = _segmented;
+        result._tableBudget = _tableBudget;
+        if (_table != null) {
+            result._table = _table;
+            result._next = _next;
+            result._keys = _keys;
+            result._stateIds = _stateIds;
+        }
+        return result;
+    }
 
-        _alphabet = alpha;
-        _numRotors = numRotors;
-        _numPawls = pawls;
+    /** Return a copy of me whose non-moving rotors are already folded,
+     *  from which other machines may be set up by setUpLike.  The copy
+     *  must not itself be used or modified. */
+    Machine template() {
+        Machine result = copy();
+        if (result._foldStale) {
+            result.foldStatic();
+        }
+        return result;
+    }
 
-        for (Rotor r : allRotors) {
-            mapRotorObjects.put(r.name(), r);
+    /** Set up my rotors, after startOver, as copies of those of
+     *  TEMPLATE, a result of template() for a machine built to my spec,
+     *  set according to SETTING as by setRotors, and use TEMPLATE's
+     *  plugboard.  SETTING is not checked again, so TEMPLATE must have
+     *  been set up with a setting of the same length.  TEMPLATE's
+     *  composition of its non-moving rotors is reused unless SETTING
+     *  moves them. */
+    void setUpLike(Machine template, String setting) {
+        syncRotors();
+        ArrayList<Rotor> rotors = template._rotorsInUse;
+        boolean sameFold = true;
+        _rotorsInUse.clear();
+        for (int i = 0; i < rotors.size(); i += 1) {
+            Rotor rotor = rotors.get(i).copy();
+            if (i > 0 && i <= setting.length()) {
+                rotor.set(setting.charAt(i - 1));
+                sameFold &= i >= template._numFolded
+                    || rotor.setting() == rotors.get(i).setting();
+            }
+            _rotorsInUse.add(rotor);
         }
+        if (_advances.length < _rotorsInUse.size()) {
+            _advances = new long[_rotorsInUse.size()];
+        }
+        _numFolded = template._numFolded;
+        _folded = template._folded;
+        _foldStale = !sameFold;
+        _segment = null;
+        _plugboard = template._plugboard;
+        dropTable();
+        _slotsStale = true;
+    }
+
+    /** Return the spec I was built to. */
+    MachineSpec spec() {
+        return _spec;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
     }
 
     /** Getter for @return Rotor objects in use. */
-    public ArrayList rotorsInUse() {
+    public ArrayList<Rotor> rotorsInUse() {
+        syncRotors();
+        _slotsStale = true;
         return _rotorsInUse;
     }
 
@@ -64,28 +243,36 @@ class Machine {
         return _numPawls;
     }
 
-    /** Set my rotor slots to the rotors named ROTORS from my set of
-     *  available rotors (ROTORS[0] names the reflector).
+    /** Set my rotor slots to fresh copies of the rotors named ROTORS from
+     *  my set of available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
+        syncRotors();
         if (_rotorsInUse.size() > numRotors()) {
             throw new EnigmaException("Too many rotors to insert");
         }
         for (int i = 0; i < rotors.length; i++) {
             String rotor = rotors[i];
 
-            Rotor setup = (Rotor) mapRotorObjects.get(rotor);
+            Rotor setup = _spec.rotor(rotor);
             if (setup == null) {
                 throw new EnigmaException("Rotor name doesn't exist.");
             }
             _rotorsInUse.add(setup);
         }
+        if (_advances.length < _rotorsInUse.size()) {
+            _advances = new long[_rotorsInUse.size()];
+        }
+        dropTable();
+        _foldStale = true;
+        _slotsStale = true;
     }
 
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 upper-case letters. The first letter refers to the
      *  leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
+        syncRotors();
         char[] initialPosition = setting.toCharArray();
 
         for (int i = 0; i < initialPosition.length; i++) {
@@ -110,27 +297,211 @@ class Machine {
             }
             current.set(initialPosition[i]);
         }
+        dropTable();
+        _foldStale = true;
+        _slotsStale = true;
+    }
+
+    /** Compose the leftmost rotors that never move (the reflector and
+     *  any fixed rotors) into the single permutation _folded, given
+     *  their current settings.  Called by loadSlots once the rotors have
+     *  been inserted and set, so that a set-up folds them only once. */
+    private void foldStatic() {
+        _numFolded = 0;
+        while (_numFolded < _rotorsInUse.size()
+               && !_rotorsInUse.get(_numFolded).rotates()) {
+            _numFolded += 1;
+        }
+        _foldStale = false;
+        _segment = null;
+        if (_numFolded == 0) {
+            _folded = null;
+            return;
+        }
+        _folded = new int[_alphabet.size()];
+        for (int c = 0; c < _folded.length; c++) {
+            int result = c;
+            for (int i = _numFolded - 1; i >= 0; i -= 1) {
+                result = _rotorsInUse.get(i).convertForward(result);
+            }
+            for (int i = 1; i < _numFolded; i++) {
+                result = _rotorsInUse.get(i).convertBackward(result);
+            }
+            _folded[c] = result;
+        }
+    }
+
+    /** Compose every rotor left of the rightmost one, at their current
+     *  settings, into _segment.  The rightmost rotor must move, since
+     *  otherwise _folded already includes it. */
+    private void buildSegment() {
+        int last = _rotorsInUse.size() - 1;
+        _segment = new int[_alphabet.size()];
+        for (int c = 0; c < _segment.length; c++) {
+            int result = c;
+            for (int i = last - 1; i >= _numFolded; i -= 1) {
+                result = _rotorsInUse.get(i).convertForward(result);
+            }
+            if (_folded != null) {
+                result = _folded[result];
+            }
+            for (int i = Math.max(1, _numFolded); i < last; i++) {
+                result = _rotorsInUse.get(i).convertBackward(result);
+            }
+            _segment[c] = result;
+        }
+    }
+
+    /** Discard any state table, which no longer matches my rotors or
+     *  plugboard. */
+    private void dropTable() {
+        _table = null;
+        _next = null;
+        _keys = null;
+        _stateIds = null;
+        _tableFailed = false;
+        _state = -1;
+    }
+
+    /** Find the current rotor settings in the state table, building a
+     *  table from them if there is none or they are not in it.  Return
+     *  true iff they are found, in which case _state is set to them and
+     *  the rotors are no longer kept up to date. */
+    private boolean enterTable() {
+        if (_tableFailed || _rotorsInUse.size() < 2) {
+            return false;
+        }
+        int moving = 0;
+        for (Rotor r : _rotorsInUse) {
+            moving += r.rotates() ? 1 : 0;
+        }
+        long maxStates = _tableBudget / (4L * _alphabet.size()
+                                         + STATE_OVERHEAD);
+        if (Math.pow(_alphabet.size(), moving) > maxStates
+            || Math.pow(_alphabet.size(), _rotorsInUse.size() - 1)
+               >= Long.MAX_VALUE) {
+            _tableFailed = true;
+            return false;
+        }
+        Integer id = _stateIds == null ? null : _stateIds.get(settingsKey());
+        if (id == null) {
+            buildTable();
+            id = 0;
+        }
+        _state = id;
+        return true;
+    }
+
+    /** Build the state table for the states reachable from the current
+     *  settings, which become state 0. */
+    private void buildTable() {
+        int size = _alphabet.size();
+        Machine sim = copy();
+        sim.setTabulated(0);
+        sim.setSegmented(true);
+        HashMap<Long, Integer> ids = new HashMap<Long, Integer>();
+        int[] table = new int[size * 64];
+        int[] next = new int[64];
+        long[] keys = new long[64];
+        keys[0] = sim.settingsKey();
+        ids.put(keys[0], 0);
+        for (int s = 0;; s += 1) {
+            if (s + 1 == next.length) {
+                table = Arrays.copyOf(table, table.length * 2);
+                next = Arrays.copyOf(next, next.length * 2);
+                keys = Arrays.copyOf(keys, keys.length * 2);
+            }
+            sim.rotate();
+            for (int c = 0; c < size; c += 1) {
+                table[s * size + c] = sim.permute(c);
+            }
+            long key = sim.settingsKey();
+            Integer t = ids.get(key);
+            if (t == null) {
+                t = ids.size();
+                ids.put(key, t);
+                keys[t] = key;
+            }
+            next[s] = t;
+            if (t <= s) {
+                _table = Arrays.copyOf(table, ids.size() * size);
+                _next = Arrays.copyOf(next, ids.size());
+                _keys = Arrays.copyOf(keys, ids.size());
+                _stateIds = ids;
+                return;
+            }
+        }
+    }
+
+    /** Set the rotors to the settings of _state, if they are out of
+     *  date. */
+    private void syncRotors() {
+        if (_state < 0) {
+            return;
+        }
+        long key = _keys[_state];
+        _state = -1;
+        for (int i = _rotorsInUse.size() - 1; i > 0; i -= 1) {
+            _rotorsInUse.get(i).set((int) (key % _alphabet.size()));
+            key /= _alphabet.size();
+        }
+        _segment = null;
+        _slotsStale = true;
+    }
+
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
     }
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
+        syncRotors();
         _plugboard = plugboard;
+        dropTable();
     }
 
     /** Returns the result of converting the input character C (as an
-     *  index in the range 0..alphabet size - 1), after first advancing
-     *  the machine. */
+     *  index in the range 0..alphabet size - 1, or else wrapped into it as
+     *  by Permutation.permute), after first advancing the machine. */
     int convert(int c) {
-
+        if (_state >= 0 || _tableBudget > 0 && enterTable()) {
+            int s = _state;
+            _state = _next[s];
+            _converted += 1;
+            _advances[0] += 1;
+            return _table[s * _alphabet.size() + _plugboard.wrap(c)];
+        }
         rotate();
+        _converted += 1;
+        return permute(c);
+    }
+
+    /** Return the conversion of C by the rotors and plugboard at their
+     *  current settings, without advancing. */
+    private int permute(int c) {
         int result = _plugboard.permute(c);
 
-        for (int i = _rotorsInUse.size() - 1; i >= 0; i -= 1) {
+        if (_segmented && _numFolded < _rotorsInUse.size()) {
+            Rotor fast = _rotorsInUse.get(_rotorsInUse.size() - 1);
+            if (_segment == null) {
+                buildSegment();
+            }
+            result = fast.convertForward(result);
+            result = _segment[result];
+            result = fast.convertBackward(result);
+            return _plugboard.invert(result);
+        }
+        for (int i = _rotorsInUse.size() - 1; i >= _numFolded; i -= 1) {
             Rotor currPerm = (Rotor) _rotorsInUse.get(i);
             result = currPerm.convertForward(result);
 
         }
-        for (int i2 = 1; i2 < _rotorsInUse.size(); i2++) {
+        if (_folded != null) {
+            result = _folded[result];
+        }
+        for (int i2 = Math.max(1, _numFolded); i2 < _rotorsInUse.size();
+             i2++) {
             Rotor currInv = (Rotor) _rotorsInUse.get(i2);
             result = currInv.convertBackward(result);
 
@@ -142,86 +513,521 @@ class Machine {
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
+        char[] in = msg.toCharArray();
+        int n = 0;
+        char first = '*';
+        for (char ch : in) {
+            if (!Character.isWhitespace(ch)) {
+                if (n == 0) {
+                    first = ch;
+                }
+                n += 1;
+            }
+        }
+        if (n == 0 || first == '*') {
+            return null;
+        }
+        char[] out = new char[groupedLength(n)];
+        convert(in, 0, in.length, out, 0);
+        return new String(out);
+    }
 
-        String input = "";
-        Scanner spaceOmitted = new Scanner(msg);
-        String prev = "";
-        while (spaceOmitted.hasNext()) {
-            prev = spaceOmitted.next();
-            input += prev;
+    /** Return true iff the first non-blank character of LINE is '*', so
+     *  that convert(String) takes it for a settings line and converts
+     *  nothing. */
+    static boolean isSettings(String line) {
+        for (int k = 0; k < line.length(); k++) {
+            char ch = line.charAt(k);
+            if (!Character.isWhitespace(ch)) {
+                return ch == '*';
+            }
         }
+        return false;
+    }
 
-        char[] upperArray = input.toUpperCase().toCharArray();
-        if (upperArray.length == 0) {
-            return null;
-        } else if (upperArray[0] == '*') {
-            return null;
+    /** Return the number of non-blank characters in MSG. */
+    static int letterCount(String msg) {
+        int n = 0;
+        for (int k = 0; k < msg.length(); k++) {
+            if (!Character.isWhitespace(msg.charAt(k))) {
+                n += 1;
+            }
         }
+        return n;
+    }
+
+    /** Return the length of the output of converting N non-blank
+     *  characters, grouped in fives. */
+    static int groupedLength(int n) {
+        return n == 0 ? 0 : n + (n - 1) / 5;
+    }
+
+    /** Convert the LEN characters of IN starting at OFF, ignoring
+     *  whitespace and case, writing the result in groups of five
+     *  separated by single blanks into OUT starting at OUTOFF.  OUT must
+     *  have room for groupedLength(number of non-blank characters).
+     *  Returns the number of characters written.  Allocates nothing. */
+    int convert(char[] in, int off, int len, char[] out, int outOff) {
+        return convert(in, off, len, out, outOff, 0);
+    }
 
-        int len = upperArray.length + upperArray.length / 5;
-        char[] outArray = new char[len];
+    /** Convert the LEN characters of IN starting at OFF as a continuation
+     *  of an output line of which COL characters have already been
+     *  written, so that groups of five carry over from one piece of a
+     *  long line to the next.  Otherwise as for convert(IN, OFF, LEN,
+     *  OUT, OUTOFF), except that OUT needs one more character of room
+     *  for a leading blank. */
+    int convert(char[] in, int off, int len, char[] out, int outOff,
+                int col) {
+        int[] block = block();
+        int k = outOff;
+        int n = 0;
+        for (int i = off; i < off + len; i++) {
+            char ch = in[i];
+            if (Character.isWhitespace(ch)) {
+                continue;
+            }
+            block[n] = _alphabet.toInt(Character.toUpperCase(ch));
+            n += 1;
+            if (n == BLOCK) {
+                k = convertGrouped(block, n, out, k, col + k - outOff);
+                n = 0;
+            }
+        }
+        k = convertGrouped(block, n, out, k, col + k - outOff);
+        reportMetrics();
+        return k - outOff;
+    }
 
-        for (int iOut = 0, iMsg = 0, i = 0; iOut < outArray.length; iOut++) {
-            if (i == 0 || i % 5 != 0) {
-                Alphabet a = _alphabet;
-                outArray[iOut] = a.toChar(convert(a.toInt(upperArray[iMsg])));
-                iMsg += 1;
-                i += 1;
+    /** Convert the LEN alphabet indices of IN starting at OFF, writing
+     *  the resulting indices into OUT starting at OUTOFF.  IN and OUT
+     *  may be the same array.  Allocates nothing. */
+    void convert(int[] in, int off, int len, int[] out, int outOff) {
+        int[] block = block();
+        for (int i = 0; i < len; i += BLOCK) {
+            int n = Math.min(BLOCK, len - i);
+            System.arraycopy(in, off + i, block, 0, n);
+            convertBlock(block, n);
+            System.arraycopy(block, 0, out, outOff + i, n);
+        }
+        reportMetrics();
+    }
+
+    /** Convert the N (at most BLOCK) alphabet indices at the start of
+     *  DATA in place, as N calls to convert(int) would.  The rotors are
+     *  first stepped through all N characters, recording the setting of
+     *  each rotor for each character; then each rotor's positional table
+     *  is applied to the whole block in turn, so that one table at a time
+     *  is in use, in a short loop.  When tabulating or segmented, or when
+     *  some rotor has no positional tables, simply calls convert(int). */
+    private void convertBlock(int[] data, int n) {
+        syncRotors();
+        if (_slotsStale) {
+            loadSlots();
+        }
+        if (_tableBudget > 0 && enterTable() || !blockable()) {
+            for (int k = 0; k < n; k += 1) {
+                data[k] = convert(data[k]);
+            }
+            return;
+        }
+        int size = _size;
+        int last = _slots.length - 1;
+        if (_schedule == null || _schedule.length != _slots.length) {
+            _schedule = new int[_slots.length][BLOCK];
+        }
+        int[][] schedule = _schedule;
+        for (int k = 0; k < n; k += 1) {
+            step();
+            for (int i = _numFolded; i <= last; i += 1) {
+                schedule[i][k] = _positions[i] * size;
+            }
+        }
+        for (int i = _numFolded; i <= last; i += 1) {
+            if (_moves[i]) {
+                _slots[i].set(_positions[i]);
+            }
+        }
+        _converted += n;
+        for (int k = 0; k < n; k += 1) {
+            data[k] = _plugboard.permute(data[k]);
+        }
+        for (int i = last; i >= _numFolded; i -= 1) {
+            int[] table = _slots[i].forwardTable();
+            int[] base = schedule[i];
+            for (int k = 0; k < n; k += 1) {
+                data[k] = table[base[k] + data[k]];
+            }
+        }
+        if (_folded != null) {
+            int[] folded = _folded;
+            for (int k = 0; k < n; k += 1) {
+                data[k] = folded[data[k]];
+            }
+        }
+        for (int i = Math.max(1, _numFolded); i <= last; i += 1) {
+            int[] table = _slots[i].backwardTable();
+            int[] base = schedule[i];
+            for (int k = 0; k < n; k += 1) {
+                data[k] = table[base[k] + data[k]];
+            }
+        }
+        for (int k = 0; k < n; k += 1) {
+            data[k] = _plugboard.invert(data[k]);
+        }
+    }
+
+    /** Return true iff I am not segmented and every rotor that
+     *  convertBlock applies has positional tables. */
+    private boolean blockable() {
+        if (_segmented || _slots.length < 2) {
+            return false;
+        }
+        for (int i = _numFolded; i < _slots.length; i += 1) {
+            if (_slots[i].forwardTable() == null
+                || _slots[i].backwardTable() == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Convert the N indices at the start of BLOCK, writing them as
+     *  characters into OUT from K on, which is column COL of the output
+     *  line, with a blank before each column 6j+5.  Returns the index in
+     *  OUT after the last character written. */
+    private int convertGrouped(int[] block, int n, char[] out, int k,
+                               int col) {
+        convertBlock(block, n);
+        for (int j = 0; j < n; j += 1) {
+            if (col % 6 == 5) {
+                out[k] = ' ';
+                k += 1;
+                col += 1;
+            }
+            out[k] = _alphabet.toChar(block[j]);
+            k += 1;
+            col += 1;
+        }
+        return k;
+    }
+
+    /** Return my scratch block of BLOCK indices. */
+    private int[] block() {
+        if (_block == null) {
+            _block = new int[BLOCK];
+        }
+        return _block;
+    }
+
+    /** Advance the rotors exactly as N calls to rotate() would, in time
+     *  bounded by the alphabet size and the number of rotors rather than
+     *  by N.  The rightmost rotor simply moves N times.  The rotor to its
+     *  left moves at each step at which either is at a notch, unless,
+     *  with fewer than three pawls, it is itself at a notch, where it then
+     *  stays; its moves are found one at a time from the distance of the
+     *  rightmost rotor to its next notch, and once a revolution of it
+     *  starts with the rightmost rotor where an earlier one did, whole
+     *  revolutions are skipped.  Each step at which it is at a notch (with
+     *  three or more pawls) carries into the rotors further left, which
+     *  then turn as an odometer: each passes on one carry for each notch
+     *  it leaves, as counted directly from its notch table.  Seeking is
+     *  not counted as rotor advances in Metrics. */
+    void advance(long n) {
+        if (n < 0) {
+            throw error("cannot advance by a negative count");
+        }
+        syncRotors();
+        int last = _rotorsInUse.size() - 1;
+        if (last < 1 || n == 0) {
+            return;
+        }
+        if (_slotsStale) {
+            loadSlots();
+        }
+        int size = _size;
+        int mid = last - 1;
+        boolean[] fastNotches = _notches[last];
+        boolean[] midNotches = _notches[mid];
+        boolean fastMoves = _moves[last];
+        boolean doubleStep = _numPawls >= 3;
+        int fast = _positions[last];
+        int m = _positions[mid];
+        long carries = 0;
+        if (!_moves[mid]) {
+            carries = doubleStep && midNotches[m] ? n : 0;
+        } else {
+            int[] toNotch = toNotchTable(fastNotches);
+            long[] seenAt = new long[size];
+            long[] seenCarries = new long[size];
+            Arrays.fill(seenAt, -1);
+            int start = m;
+            long done = 0;
+            while (done < n) {
+                int f = fastMoves ? (int) ((fast + done % size) % size)
+                    : fast;
+                if (m == start && seenAt != null) {
+                    if (seenAt[f] >= 0) {
+                        long period = done - seenAt[f];
+                        long skip = (n - done) / period;
+                        done += skip * period;
+                        carries += skip * (carries - seenCarries[f]);
+                        seenAt = null;
+                        continue;
+                    }
+                    seenAt[f] = done;
+                    seenCarries[f] = carries;
+                }
+                long wait;
+                if (midNotches[m]) {
+                    if (!doubleStep) {
+                        break;
+                    }
+                    wait = 1;
+                } else if (fastMoves) {
+                    wait = toNotch[f] < 0 ? Long.MAX_VALUE : toNotch[f] + 1;
+                } else {
+                    wait = fastNotches[f] ? 1 : Long.MAX_VALUE;
+                }
+                if (wait > n - done) {
+                    break;
+                }
+                done += wait;
+                carries += midNotches[m] ? 1 : 0;
+                m = m + 1 == size ? 0 : m + 1;
+            }
+            _positions[mid] = m;
+        }
+        if (fastMoves) {
+            _positions[last] = (int) ((fast + n % size) % size);
+        }
+        for (int j = last - 2; j >= last - _numPawls && carries > 0;
+             j -= 1) {
+            int p = _positions[j];
+            if (_moves[j]) {
+                _positions[j] = (int) ((p + carries % size) % size);
+                carries = notchesPassed(_notches[j], p, carries);
             } else {
-                outArray[iOut] = ' ';
-                i = 0;
+                carries = _notches[j][p] ? carries : 0;
+            }
+        }
+        for (int i = 0; i <= last; i += 1) {
+            if (_moves[i]) {
+                _slots[i].set(_positions[i]);
             }
+        }
+        _segment = null;
+    }
 
+    /** Return the number of steps from each position to the next
+     *  position at which NOTCHES is true (0 if it is true there), or -1
+     *  everywhere if it is never true. */
+    private static int[] toNotchTable(boolean[] notches) {
+        int size = notches.length;
+        int[] result = new int[size];
+        int next = -1;
+        for (int k = 2 * size - 1; k >= 0; k -= 1) {
+            int p = k % size;
+            if (notches[p]) {
+                next = k;
+            }
+            result[p] = next < 0 ? -1 : next - k;
         }
-        String output = new String(outArray);
-        if (outArray[len - 1] == ' ') {
-            output = output.substring(0, len - 1);
+        return result;
+    }
+
+    /** Return how many of the COUNT positions from P on (wrapping around)
+     *  NOTCHES is true at. */
+    private static long notchesPassed(boolean[] notches, int p,
+                                      long count) {
+        int size = notches.length;
+        long perTurn = 0, partial = 0;
+        int rest = (int) (count % size);
+        for (int k = 0; k < size; k += 1) {
+            if (notches[(p + k) % size]) {
+                perTurn += 1;
+                partial += k < rest ? 1 : 0;
+            }
         }
+        return count / size * perTurn + partial;
+    }
 
-        return output;
+    /** Return the settings of all rotors in use after the reflector,
+     *  packed into a single number. */
+    private long settingsKey() {
+        long key = 0;
+        for (int i = 1; i < _rotorsInUse.size(); i++) {
+            key = key * _alphabet.size() + _rotorsInUse.get(i).setting();
+        }
+        return key;
+    }
+
+    /** Convert each byte remaining in IN, taken as an alphabet index,
+     *  writing the resulting indices as bytes to OUT, which must have
+     *  room for them.  Meant for the 256-symbol ByteAlphabet, with which
+     *  binary data is encrypted without any text decoding. */
+    void convert(ByteBuffer in, ByteBuffer out) {
+        int[] block = block();
+        while (in.hasRemaining()) {
+            int n = Math.min(BLOCK, in.remaining());
+            for (int k = 0; k < n; k += 1) {
+                block[k] = in.get() & 0xFF;
+            }
+            convertBlock(block, n);
+            for (int k = 0; k < n; k += 1) {
+                out.put((byte) block[k]);
+            }
+        }
+        reportMetrics();
+    }
+
+    /** Convert the ASCII text in IN[FROM .. TO-1] as convert(String)
+     *  does, writing the grouped result as ASCII bytes to OUT, which must
+     *  have room for groupedLength(number of non-blank characters).
+     *  Returns the number of bytes written, which is 0 for a line whose
+     *  first non-blank character is '*'.  Allocates nothing. */
+    int convertText(ByteBuffer in, int from, int to, ByteBuffer out) {
+        int start = out.position();
+        int inGroup = 0;
+        for (int i = from; i < to; i++) {
+            int b = in.get(i);
+            if (b < 0) {
+                throw error("non-ASCII byte in mapped input");
+            }
+            char ch = (char) b;
+            if (Character.isWhitespace(ch)) {
+                continue;
+            }
+            if (ch == '*' && out.position() == start) {
+                return 0;
+            }
+            if (inGroup == 5) {
+                out.put((byte) ' ');
+                inGroup = 0;
+            }
+            int c = _alphabet.toInt(Character.toUpperCase(ch));
+            out.put((byte) _alphabet.toChar(convert(c)));
+            inGroup += 1;
+        }
+        reportMetrics();
+        return out.position() - start;
     }
 
     /** Makes rotors go forward. */
     public void rotate() {
+        syncRotors();
+        if (_slotsStale) {
+            loadSlots();
+        }
+        int last = _slots.length - 1;
+        for (int i = step(); i <= last; i += 1) {
+            if (_moves[i]) {
+                _slots[i].set(_positions[i]);
+            }
+        }
+    }
+
+    /** Advance the stepping state (_positions) by one keystroke, without
+     *  setting the rotors themselves.  Returns the leftmost slot that was
+     *  stepped. */
+    private int step() {
+        boolean[][] notches = _notches;
+        int[] positions = _positions;
         int currPawl = _numPawls;
-        int size = _rotorsInUse.size();
-        int r = size - 1;
-        Rotor right = _rotorsInUse.get(r);
-        r -= 1;
-        Rotor left = _rotorsInUse.get(r);
-        boolean rightAtNotch = left.atNotch();
-        boolean meMove = right.atNotch();
-        boolean clas = left.getClass().equals(MovingRotor.class);
-        boolean edge = false;
-
-
-        right.advance();
-        currPawl -= 1;
-        int reflectorPawl = 0;
+        int last = positions.length - 1;
+        int r = last - 1;
+        boolean leftAtNotch = notches[r][positions[r]];
+        boolean meMove = notches[last][positions[last]];
 
+        if (_moves[last]) {
+            int p = positions[last] + 1;
+            positions[last] = p == _size ? 0 : p;
+        }
+        _advances[0] += 1;
+        currPawl -= 1;
 
-        if (rightAtNotch) {
-            edge = size == 2 && _numPawls == 2;
+        if (leftAtNotch) {
             if (currPawl >= 2) {
-                left.advance();
-                while (currPawl != reflectorPawl && rightAtNotch) {
+                stepLeft(r);
+                _doubleSteps += 1;
+                while (currPawl != 0 && leftAtNotch) {
                     r -= 1;
                     currPawl -= 1;
-                    left = _rotorsInUse.get(r);
-                    rightAtNotch = left.atNotch();
-                    left.advance();
+                    leftAtNotch = notches[r][positions[r]];
+                    stepLeft(r);
                 }
-            } else if (edge) {
-                left.advance();
+                return r;
+            } else if (positions.length == 2 && _numPawls == 2) {
+                stepLeft(r);
+                return r;
             }
-        } else if (!rightAtNotch && meMove) {
-            left.advance();
+        } else if (meMove) {
+            stepLeft(r);
+            return r;
         }
+        return last;
+    }
+
+    /** Advance the position of slot R, other than the rightmost,
+     *  invalidating the composed segment. */
+    private void stepLeft(int r) {
+        if (_moves[r]) {
+            int p = _positions[r] + 1;
+            _positions[r] = p == _size ? 0 : p;
+        }
+        _advances[_positions.length - 1 - r] += 1;
+        _segment = null;
+    }
+
+    /** Load the stepping state (_slots, _positions, _notches and _moves)
+     *  from the rotors in use, reusing its arrays where possible, and
+     *  fold the non-moving rotors if they have changed. */
+    private void loadSlots() {
+        if (_foldStale) {
+            foldStatic();
+        }
+        int n = _rotorsInUse.size();
+        if (_slots == null || _slots.length != n) {
+            _slots = new Rotor[n];
+            _positions = new int[n];
+            _notches = new boolean[n][];
+            _moves = new boolean[n];
+        }
+        if (_noNotches == null) {
+            _noNotches = new boolean[_size];
+        }
+        for (int i = 0; i < n; i += 1) {
+            _slots[i] = _rotorsInUse.get(i);
+            _positions[i] = _slots[i].setting();
+            _notches[i] = _slots[i].notchTable();
+            if (_notches[i] == null) {
+                _notches[i] = _noNotches;
+            }
+            _moves[i] = _slots[i].rotates();
+        }
+        _slotsStale = false;
+    }
+
+    /** Add the counts of my activity since the last call to the
+     *  process-wide Metrics. */
+    void reportMetrics() {
+        Metrics.INSTANCE.recordConversion(_converted, _advances,
+                                          _doubleSteps);
+        _converted = 0;
+        _doubleSteps = 0;
+        Arrays.fill(_advances, 0);
     }
 
     /** startOvers rotors. */
     void startOver() {
+        syncRotors();
+        dropTable();
+        _slotsStale = true;
         _rotorsInUse = new ArrayList<Rotor>();
+        _numFolded = 0;
+        _folded = null;
+        _foldStale = false;
+        _segment = null;
     }
 }
 
@@ -0,0 +1,96 @@
+package enigma;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static enigma.EnigmaException.*;
+
+/** The immutable description of an enigma machine: its alphabet, the
+ *  number of rotor slots and pawls, and the library of available rotors
+ *  with their wirings and notches.  A spec may be shared by any number
+ *  of Machines on any number of threads; each Machine holds its own
+ *  rotor settings and plugboard.
+ *
+ *  The rotors of a spec built from a RotorSource are built the first
+ *  time they are asked for, so that rotors that are never used cost no
+ *  wiring tables.
+ *  @author Anastasia Sukhorebraya
+ */
+class MachineSpec {
+
+    /** A spec for machines with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     *  and 0 <= PAWLS < NUMROTORS pawls, whose available rotors are
+     *  copies of ALLROTORS at their 0 settings. */
+    MachineSpec(Alphabet alpha, int numRotors, int pawls,
+                Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls, (RotorSource) null);
+        for (Rotor r : allRotors) {
+            Rotor template = r.copy();
+            if (template.setting() != 0) {
+                template.set(0);
+            }
+            _rotors.put(r.name(), template);
+        }
+    }
+
+    /** A spec for machines with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     *  and 0 <= PAWLS < NUMROTORS pawls, whose available rotors are those
+     *  described by LIBRARY (if not null). */
+    MachineSpec(Alphabet alpha, int numRotors, int pawls,
+                RotorSource library) {
+        if (pawls >= numRotors) {
+            throw new EnigmaException("Can't have PAWLS >= ROTORS.");
+        }
+        _alphabet = alpha;
+        _numRotors = numRotors;
+        _numPawls = pawls;
+        _library = library;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of pawls (and thus rotating rotors). */
+    int numPawls() {
+        return _numPawls;
+    }
+
+    /** Return a new rotor named NAME at its 0 setting, sharing the
+     *  wiring of my rotor of that name, or null if I have none. */
+    Rotor rotor(String name) {
+        Rotor template = _rotors.get(name);
+        if (template == null && _library != null
+            && _library.contains(name)) {
+            template = _rotors.computeIfAbsent(name,
+                n -> _library.build(n, _alphabet));
+        }
+        return template == null ? null : template.copy();
+    }
+
+    /** Return a new machine built to this spec, with no rotors
+     *  inserted. */
+    Machine newMachine() {
+        return new Machine(this);
+    }
+
+    /** Alphabet shared by all rotors. */
+    private final Alphabet _alphabet;
+    /** Number of rotor slots. */
+    private final int _numRotors;
+    /** Number of pawls. */
+    private final int _numPawls;
+    /** Available rotors by name, at their 0 settings, including those
+     *  of _library built so far.  Never handed out or advanced; see
+     *  rotor. */
+    private final ConcurrentHashMap<String, Rotor> _rotors =
+        new ConcurrentHashMap<String, Rotor>();
+    /** Descriptions of the rotors not yet built, or null. */
+    private final RotorSource _library;
+}
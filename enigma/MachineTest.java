@@ -2,8 +2,12 @@ package enigma;
 
 import org.junit.Test;
 import static enigma.TestUtils.*;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import static org.junit.Assert.*;
 
 
@@ -66,15 +70,383 @@ public class MachineTest {
 
         for (String check: expected) {
 
-            assertEquals(check, getSetting(ac, machineRotors));
+            assertEquals(check, getSetting(ac, mach.rotorsInUse()));
             mach.rotate();
         }
 
     }
 
+    @Test
+    public void testNavalConvert() {
+        Machine mach = navalMachine();
+        assertEquals("ILBDA AMTAZ", mach.convert("Hello world"));
+        mach = navalMachine();
+        assertEquals("HELLO WORLD", mach.convert("ILBDA AMTAZ"));
+    }
+
+    @Test
+    public void testAdvanceMatchesRotate() {
+        Alphabet ac = new CharacterRange('A', 'D');
+        for (int n = 0; n < 150; n++) {
+            Rotor[] stepped = doubleStepRotors(ac);
+            Rotor[] jumped = doubleStepRotors(ac);
+            Machine a = doubleStepMachine(ac, stepped);
+            Machine b = doubleStepMachine(ac, jumped);
+            for (int i = 0; i < n; i++) {
+                a.rotate();
+            }
+            b.advance(n);
+            assertEquals(getSetting(ac, a.rotorsInUse()),
+                         getSetting(ac, b.rotorsInUse()));
+        }
+
+        Machine stepped = navalMachine();
+        Machine jumped = navalMachine();
+        for (int i = 0; i < 50000; i++) {
+            stepped.rotate();
+        }
+        jumped.advance(50000);
+        assertEquals(stepped.convert("Hello world"),
+                     jumped.convert("Hello world"));
+
+        Machine cycling = navalMachine();
+        for (int i = 0; i < 100; i++) {
+            cycling.rotate();
+        }
+        String start = getSetting(UPPER, cycling.rotorsInUse());
+        long period = 0;
+        do {
+            cycling.rotate();
+            period += 1;
+        } while (!getSetting(UPPER, cycling.rotorsInUse()).equals(start));
+        long n = 3_000_000_000_000L;
+        stepped = navalMachine();
+        for (long i = 0; i < 100 + (n - 100) % period; i++) {
+            stepped.rotate();
+        }
+        jumped = navalMachine();
+        jumped.advance(n);
+        assertEquals(getSetting(UPPER, stepped.rotorsInUse()),
+                     getSetting(UPPER, jumped.rotorsInUse()));
+
+        Alphabet six = new CharacterRange('A', 'F');
+        Random random = new Random(61);
+        for (int trial = 0; trial < 400; trial++) {
+            int pawls = 1 + trial % 4;
+            String setting = "";
+            for (int i = 0; i < 4; i++) {
+                setting += six.toChar(random.nextInt(6));
+            }
+            int steps = random.nextInt(trial % 2 == 0 ? 40 : 3000);
+            Machine a = randomMachine(six, pawls, new Random(trial));
+            Machine b = randomMachine(six, pawls, new Random(trial));
+            a.setRotors(setting);
+            b.setRotors(setting);
+            for (int i = 0; i < steps; i++) {
+                a.rotate();
+            }
+            b.advance(steps);
+            assertEquals("trial " + trial,
+                         getSetting(six, a.rotorsInUse()),
+                         getSetting(six, b.rotorsInUse()));
+        }
+
+        stepped = staticMachine();
+        jumped = staticMachine();
+        for (int i = 0; i < 5; i++) {
+            stepped.rotate();
+        }
+        jumped.advance(5);
+        assertEquals(getSetting(UPPER, stepped.rotorsInUse()),
+                     getSetting(UPPER, jumped.rotorsInUse()));
+        assertEquals("SWBBQ EQPBF", jumped.convert("Hello world"));
+    }
+
+    /** Helper method returning a five-rotor machine over alphabet SIX
+     *  (A-F) with PAWLS pawls, whose moving rotors have notches chosen
+     *  by RANDOM, some with none and some with several. */
+    private Machine randomMachine(Alphabet six, int pawls, Random random) {
+        ArrayList<Rotor> all = new ArrayList<>();
+        String[] names = new String[5];
+        names[0] = "R";
+        all.add(new Reflector("R", new Permutation("(AB) (CD) (EF)", six)));
+        for (int i = 1; i < 5; i++) {
+            names[i] = "S" + i;
+            Permutation perm = new Permutation("(ABCDEF)", six);
+            if (i < 5 - pawls) {
+                all.add(new FixedRotor(names[i], perm));
+            } else {
+                String notches = "";
+                for (int k = 0; k < 6; k++) {
+                    if (random.nextInt(4) == 0) {
+                        notches += six.toChar(k);
+                    }
+                }
+                all.add(new MovingRotor(names[i], perm, notches));
+            }
+        }
+        Machine mach = new Machine(six, 5, pawls, all);
+        mach.insertRotors(names);
+        return mach;
+    }
+
+    /** Helper method returning fresh rotors for the four-rotor,
+     *  three-pawl machine of testDoubleStep over alphabet AC. */
+    private Rotor[] doubleStepRotors(Alphabet ac) {
+        return new Rotor[] {
+            new Reflector("R1", new Permutation("(AC) (BD)", ac)),
+            new MovingRotor("R2", new Permutation("(ABCD)", ac), "C"),
+            new MovingRotor("R3", new Permutation("(ABCD)", ac), "C"),
+            new MovingRotor("R4", new Permutation("(ABCD)", ac), "C")
+        };
+    }
+
+    /** Helper method returning a machine over alphabet AC using ROTORS
+     *  from doubleStepRotors, set to AAA. */
+    private Machine doubleStepMachine(Alphabet ac, Rotor[] rotors) {
+        Machine mach = new Machine(ac, 4, 3,
+                new ArrayList<>(Arrays.asList(rotors)));
+        mach.insertRotors(new String[] {"R1", "R2", "R3", "R4"});
+        mach.setRotors("AAA");
+        return mach;
+    }
+
+    @Test
+    public void testParallelConvert() {
+        Machine plain = navalMachine();
+        Machine chunked = navalMachine();
+        ArrayList<String> lines = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            String line = "";
+            for (int k = 0; k < i * 3; k++) {
+                line += (char) ('a' + (i * k) % 26);
+                if (k % 4 == 3) {
+                    line += " ";
+                }
+            }
+            lines.add(line);
+        }
+        lines.set(20, "  *AB");
+        ParallelConverter converter =
+            new ParallelConverter(new ForkJoinPool(4), 7);
+        String[] converted = converter.convert(chunked, lines);
+        for (int i = 0; i < lines.size(); i++) {
+            String expected = plain.convert(lines.get(i));
+            assertEquals(expected == null ? "" : expected, converted[i]);
+        }
+        assertEquals(plain.convert("Hello world"),
+                     chunked.convert("Hello world"));
+    }
+
+    @Test
+    public void testSharedSpec() {
+        Machine first = navalMachine();
+        MachineSpec spec = first.spec();
+        Machine second = spec.newMachine();
+        second.insertRotors(new String[] {"B", "BETA", "I", "II", "III"});
+        second.setRotors("AAAA");
+        second.setPlugboard(new Permutation("", UPPER));
+        assertEquals("ILBDA AMTAZ", first.convert("Hello world"));
+        assertEquals("ILBDA AMTAZ", second.convert("Hello world"));
+        Machine third = second.copy();
+        assertEquals(second.convert("Hello world"),
+                     third.convert("Hello world"));
+    }
+
+    @Test
+    public void testMetrics() {
+        Machine mach = navalMachine();
+        long chars = Metrics.INSTANCE.getCharactersConverted();
+        long fast = Metrics.INSTANCE.getRotorAdvances()[0];
+        mach.advance(1000);
+        assertEquals(fast, Metrics.INSTANCE.getRotorAdvances()[0]);
+        mach.convert("Hello world");
+        assertEquals(chars + 10, Metrics.INSTANCE.getCharactersConverted());
+        assertEquals(fast + 10, Metrics.INSTANCE.getRotorAdvances()[0]);
+    }
+
+    @Test
+    public void testByteConvert() {
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 37);
+        }
+        ByteBuffer encrypted = ByteBuffer.allocate(data.length);
+        byteMachine().convert(ByteBuffer.wrap(data), encrypted);
+        encrypted.flip();
+        ByteBuffer decrypted = ByteBuffer.allocate(data.length);
+        byteMachine().convert(encrypted, decrypted);
+        assertArrayEquals(data, decrypted.array());
+        assertFalse(Arrays.equals(data, encrypted.array()));
+    }
+
+    /** Helper method to build a three-rotor machine over all 256 byte
+     *  values, set to AA with a plugboard swapping bytes 00 and FF. */
+    private Machine byteMachine() {
+        Alphabet bytes = new ByteAlphabet();
+        int[] reflect = new int[ByteAlphabet.SIZE];
+        int[] shift = new int[ByteAlphabet.SIZE];
+        for (int i = 0; i < reflect.length; i++) {
+            reflect[i] = i ^ 0x5A;
+            shift[i] = (i * 7 + 3) % ByteAlphabet.SIZE;
+        }
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("R", new Permutation(reflect, bytes)));
+        all.add(new MovingRotor("L", new Permutation(
+                ByteAlphabet.cycles("(00FF10) (4142)"), bytes), "Q"));
+        all.add(new MovingRotor("F", new Permutation(shift, bytes), "z"));
+        Machine mach = new Machine(bytes, 3, 2, all);
+        mach.insertRotors(new String[] {"R", "L", "F"});
+        mach.setRotors("AA");
+        mach.setPlugboard(new Permutation(ByteAlphabet.cycles("(00FF)"),
+                                          bytes));
+        return mach;
+    }
+
+    @Test
+    public void testBulkConvert() {
+        Machine mach = navalMachine();
+        char[] in = "##Hello   world\t!!".toCharArray();
+        char[] out = new char[14];
+        int n = mach.convert(in, 2, 14, out, 3);
+        assertEquals(11, n);
+        assertEquals(11, Machine.groupedLength(10));
+        assertEquals("ILBDA AMTAZ", new String(out, 3, n));
+
+        mach = navalMachine();
+        int[] msg = {8, 11, 1, 3, 0};
+        mach.convert(msg, 0, msg.length, msg, 0);
+        assertArrayEquals(new int[] {7, 4, 11, 11, 14}, msg);
+    }
+
+    @Test
+    public void testBlockConvertMatches() {
+        Machine single = navalMachine();
+        Machine blocked = navalMachine();
+        int[] msg = new int[3 * Machine.BLOCK + 17];
+        for (int i = 0; i < msg.length; i++) {
+            msg[i] = (i * 7 + i / 26) % 26;
+        }
+        int[] expected = new int[msg.length];
+        for (int i = 0; i < msg.length; i++) {
+            expected[i] = single.convert(msg[i]);
+        }
+        blocked.convert(msg, 0, msg.length, msg, 0);
+        assertArrayEquals(expected, msg);
+        assertEquals(getSetting(UPPER, single.rotorsInUse()),
+                     getSetting(UPPER, blocked.rotorsInUse()));
+        assertEquals(single.convert(3), blocked.convert(3));
+    }
+
+    @Test
+    public void testConvertText() {
+        Machine mach = navalMachine();
+        ByteBuffer in = ByteBuffer.wrap("##Hello   world\t!!".getBytes());
+        ByteBuffer out = ByteBuffer.allocate(14);
+        out.position(3);
+        assertEquals(11, mach.convertText(in, 2, 16, out));
+        assertEquals("ILBDA AMTAZ", new String(out.array(), 3, 11));
+        in = ByteBuffer.wrap(" \t*AB".getBytes());
+        assertEquals(0, mach.convertText(in, 0, 5, out));
+        assertEquals(14, out.position());
+    }
+
+    @Test
+    public void testTabulatedMatches() {
+        Machine plain = navalMachine();
+        Machine tabulated = navalMachine();
+        Machine small = navalMachine();
+        tabulated.setTabulated(1 << 23);
+        small.setTabulated(1000);
+        for (int i = 0; i < 30000; i++) {
+            int c = (i * 11) % 26;
+            int expected = plain.convert(c);
+            assertEquals(expected, tabulated.convert(c));
+            assertEquals(expected, small.convert(c));
+            if (i % 9999 == 0) {
+                assertEquals(getSetting(UPPER, plain.rotorsInUse()),
+                             getSetting(UPPER, tabulated.rotorsInUse()));
+                tabulated = tabulated.copy();
+            }
+        }
+        tabulated.setRotors("AXLE");
+        plain.setRotors("AXLE");
+        assertEquals(plain.convert("Tabulated again"),
+                     tabulated.convert("Tabulated again"));
+
+        Alphabet ten = new ExtraCredit("ABCDEFGHIJ");
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R",
+                new Permutation("(AB) (CD) (EF) (GH) (IJ)", ten)));
+        rotors.add(new MovingRotor("M1",
+                new Permutation("(ABCDE) (FGHIJ)", ten), "C"));
+        rotors.add(new MovingRotor("M2",
+                new Permutation("(ACEGI) (BDFHJ)", ten), "F"));
+        Machine plainTen = new Machine(ten, 3, 2, rotors);
+        plainTen.insertRotors(new String[] {"R", "M1", "M2"});
+        plainTen.setRotors("AA");
+        plainTen.setPlugboard(new Permutation("", ten));
+        Machine tabulatedTen = plainTen.copy();
+        tabulatedTen.setTabulated(1 << 23);
+        for (int i = 0; i < 500; i++) {
+            int c = i % 7 == 0 ? ten.toInt('X') : (i * 3) % 10;
+            assertEquals(plainTen.convert(c), tabulatedTen.convert(c));
+        }
+
+        Machine still = staticMachine();
+        still.setTabulated(1 << 23);
+        assertEquals("SWBBQ EQPBF", still.convert("Hello world"));
+        assertEquals(staticMachine().convert("From his shoulder Hiawatha"),
+                     still.convert("From his shoulder Hiawatha"));
+    }
+
+    @Test
+    public void testSegmentedMatches() {
+        Machine plain = navalMachine();
+        Machine segmented = navalMachine();
+        segmented.setSegmented(true);
+        for (int i = 0; i < 2000; i++) {
+            int c = (i * 7) % 26;
+            assertEquals(plain.convert(c), segmented.convert(c));
+        }
+        int[] bulk = new int[3000];
+        for (int i = 0; i < bulk.length; i++) {
+            bulk[i] = (i * 5) % 26;
+        }
+        int[] expected = new int[bulk.length];
+        plain.convert(bulk, 0, bulk.length, expected, 0);
+        segmented.convert(bulk, 0, bulk.length, bulk, 0);
+        assertArrayEquals(expected, bulk);
+
+        plain = staticMachine();
+        segmented = staticMachine();
+        segmented.setSegmented(true);
+        for (int c = 0; c < 26; c++) {
+            assertEquals(plain.convert(c), segmented.convert(c));
+        }
+        assertEquals("SWBBQ EQPBF", segmented.convert("Hello world"));
+    }
+
+    /** Helper method to build a three-rotor machine with no pawls,
+     *  B BETA GAMMA set to CD with plugboard (AB), none of whose rotors
+     *  ever moves. */
+    private Machine staticMachine() {
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)));
+        all.add(new FixedRotor("BETA",
+                new Permutation(NAVALA.get("Beta"), UPPER)));
+        all.add(new FixedRotor("GAMMA",
+                new Permutation(NAVALA.get("Gamma"), UPPER)));
+        Machine mach = new Machine(UPPER, 3, 0, all);
+        mach.insertRotors(new String[] {"B", "BETA", "GAMMA"});
+        mach.setRotors("CD");
+        mach.setPlugboard(new Permutation("(AB)", UPPER));
+        return mach;
+    }
+
     /** Helper method to get the String representation
-     * of the current Rotor settings */
-    private String getSetting(Alphabet alph, Rotor[] machineRotors) {
+     *  of the current Rotor settings. */
+    private String getSetting(Alphabet alph, List<Rotor> machineRotors) {
         String currSetting = "";
         for (Rotor r : machineRotors) {
             currSetting += alph.toChar(r.setting());
@@ -1,11 +1,29 @@
 package enigma;
-import java.io.File;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import static enigma.TestUtils.*;
-import java.util.Scanner;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import static enigma.EnigmaException.*;
 
 /** Enigma simulator.
@@ -14,7 +32,8 @@ import static enigma.EnigmaException.*;
 public final class Main {
 
     /** Process a sequence of encryptions and decryptions, as
-     *  specified by ARGS, where 1 <= ARGS.length <= 3.
+     *  specified by ARGS, where 1 <= ARGS.length <= 3 after any leading
+     *  options (arguments starting with "--"; see setOption).
      *  ARGS[0] is the name of a configuration file.
      *  ARGS[1] is optional; when present, it names an input file
      *  containing messages.  Otherwise, input comes from the standard
@@ -34,38 +53,172 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        int first;
+        for (first = 0; first < args.length && args[first].startsWith("--");
+             first += 1) {
+            setOption(args[first]);
+        }
+        args = Arrays.copyOfRange(args, first, args.length);
         if (args.length < 1 || args.length > 3) {
             throw error("Too Short command line input");
         }
 
+        _configName = args[0];
         _configuration = getInput(args[0]);
 
-        if (args.length > 1) {
-            _input = getInput(args[1]);
-        } else {
-            _input = new Scanner(System.in);
+        if (_compile != null) {
+            if (args.length != 1) {
+                throw error("--compile takes only a configuration file");
+            }
+            return;
+        }
+
+        if (_mapped && args.length != 3) {
+            throw error("--mmap needs input and output files");
+        }
+        if (_binary != null || _mapped) {
+            _inputName = args.length > 1 ? args[1] : null;
+            _outputName = args.length > 2 ? args[2] : null;
+            return;
         }
 
+        Writer output;
         if (args.length > 2) {
-            _output = getOutput(args[2]);
+            output = getOutput(args[2]);
         } else {
-            _output = System.out;
+            output = new BufferedWriter(new OutputStreamWriter(System.out),
+                                        OUTPUT_BUFFER);
         }
+
+        Reader input;
+        if (args.length > 1) {
+            input = getReader(args[1]);
+        } else {
+            input = new InputStreamReader(System.in);
+        }
+
+        if (_pipelined) {
+            Pipeline pipe = new Pipeline(input, output, PIPELINE_BLOCKS);
+            input = pipe.reader();
+            output = pipe.writer();
+        }
+        _output = output;
+        _input = new LineReader(input, _output);
     }
 
-    /** Return a Scanner reading from the file named @param nAame nAame. */
-    private Scanner getInput(String nAame) {
+    /** Record the command-line OPTION, one of
+     *  --segmented: reuse the composed left rotor stack between notch
+     *               turnovers (see Machine.setSegmented).
+     *  --parallel:  convert the messages of each setting in chunks on
+     *               all available cores (see ParallelConverter).
+     *  --sections:  convert the messages of different settings
+     *               concurrently on separate machines, writing the
+     *               results in their original order.
+     *  --serve=P:   read only the configuration, then serve conversion
+     *               requests on local port P until killed (see Server).
+     *  --binary=S:  encrypt the input file as raw bytes with a machine
+     *               set up by the settings line S, which has the form of
+     *               a '*' line.  The configuration must use the 256-byte
+     *               alphabet (see ByteAlphabet).
+     *  --mmap:      convert the input file into the output file through
+     *               memory mappings (see MappedConverter); with
+     *               --binary, the input is taken as raw bytes.
+     *  --pipeline:  read and write on threads of their own, overlapping
+     *               I/O with conversion (see Pipeline).
+     *  --tabulate[=B]: convert from a table of every reachable rotor
+     *               state when one fits in B bytes (by default,
+     *               Machine.STATE_TABLE_BUDGET; see
+     *               Machine.setTabulated).
+     *  --compile=F: compile the configuration into the snapshot file F
+     *               (see ConfigSnapshot), converting nothing.
+     *  --snapshot=F: take the configuration from the snapshot file F
+     *               instead, unless F is missing or older than the
+     *               configuration file.  F is mapped read-only and
+     *               shared with other processes using it. */
+    private void setOption(String option) {
+        switch (option) {
+        case "--segmented":
+            _segmented = true;
+            break;
+        case "--parallel":
+            _parallel = new ParallelConverter(ForkJoinPool.commonPool(),
+                                              ParallelConverter.CHUNK);
+            _pending = new ArrayList<String>();
+            break;
+        case "--tabulate":
+            _tableBudget = Machine.STATE_TABLE_BUDGET;
+            break;
+        case "--pipeline":
+            _pipelined = true;
+            break;
+        case "--mmap":
+            _mapped = true;
+            break;
+        case "--sections":
+            _workers = Executors.newFixedThreadPool(WORKERS, r -> {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                return t;
+            });
+            _inFlight = new ArrayDeque<Future<String[]>>();
+            _pending = new ArrayList<String>();
+            break;
+        default:
+            if (option.startsWith("--binary=")) {
+                _binary = option.substring(9);
+                break;
+            }
+            if (option.startsWith("--tabulate=")) {
+                try {
+                    _tableBudget = Long.parseLong(option.substring(11));
+                } catch (NumberFormatException excp) {
+                    throw error("bad budget in %s", option);
+                }
+                break;
+            }
+            if (option.startsWith("--compile=")) {
+                _compile = option.substring(10);
+                break;
+            }
+            if (option.startsWith("--snapshot=")) {
+                _snapshot = option.substring(11);
+                break;
+            }
+            if (option.startsWith("--serve=")) {
+                try {
+                    _port = Integer.parseInt(option.substring(8));
+                } catch (NumberFormatException excp) {
+                    throw error("bad port in %s", option);
+                }
+                break;
+            }
+            throw error("unknown option %s", option);
+        }
+    }
+
+    /** Return a ConfigReader reading from the file named @param nAame
+     *  nAame. */
+    private ConfigReader getInput(String nAame) {
         try {
-            return new Scanner(new File(nAame));
+            return new ConfigReader(new FileReader(nAame));
         } catch (IOException excp) {
             throw error("can't open %s", nAame);
         }
     }
 
-    /** Return a PrintStream writing to the file named @param nAme nAme. */
-    private PrintStream getOutput(String nAme) {
+    /** Return a Reader reading from the file named NAME. */
+    private Reader getReader(String name) {
         try {
-            return new PrintStream(new File(nAme));
+            return new FileReader(name);
+        } catch (IOException excp) {
+            throw error("can't open %s", name);
+        }
+    }
+
+    /** Return a Writer writing to the file named @param nAme nAme. */
+    private Writer getOutput(String nAme) {
+        try {
+            return new BufferedWriter(new FileWriter(nAme), OUTPUT_BUFFER);
         } catch (IOException excp) {
             throw error("can't read %s", nAme);
         }
@@ -73,124 +226,379 @@ public final class Main {
 
     /** Configure an Enigma machine from the contents of configuration
      *  file _configuration and apply it to the messages in _input, sending the
-     *  results to _output. */
-    private void process() {
-        _allRotors = new ArrayList<Rotor>();
+     *  results to _output.  On an error, whatever was converted before it
+     *  is still written to _output. */
+    void process() {
+        Metrics.register();
+        if (_compile != null) {
+            compile();
+            return;
+        }
+        if (_mapped) {
+            processMapped();
+            return;
+        }
+        if (_binary != null) {
+            processBinary();
+            return;
+        }
+        if (_port >= 0) {
+            try (Server server = new Server(readConfig().spec(), _port)) {
+                server.serve();
+            }
+            return;
+        }
+        try {
+            convertSections();
+        } catch (EnigmaException excp) {
+            try {
+                if (_inFlight != null) {
+                    drain(0);
+                }
+            } finally {
+                try {
+                    _output.close();
+                } catch (IOException closeExcp) {
+                    /* Ignore: EXCP is the error to report. */
+                }
+            }
+            throw excp;
+        } finally {
+            if (_workers != null) {
+                _workers.shutdown();
+            }
+        }
+    }
+
+    /** Read the machine configuration and convert every section of
+     *  _input, as described for process. */
+    private void convertSections() {
         Machine enigma = readConfig();
-        String currLine = _input.nextLine();
-        if (currLine == null) {
+        enigma.setSegmented(_segmented);
+        enigma.setTabulated(_tableBudget);
+        if (!_input.hasLine()) {
             throw new EnigmaException("No input");
-        } else if (currLine.charAt(0) != '*') {
+        } else if (_input.peek() != '*') {
             throw new EnigmaException(""
                     + "Initial Setting must start with an asterisk");
-        } else {
-            String prev = "";
-            while (_input.hasNextLine()) {
-                if (!currLine.equals("")) {
-                    if (currLine.charAt(0) == '*') {
-                        enigma.startOver();
-                        setUp(enigma, currLine.substring(1));
-                    } else {
-                        String converted = enigma.convert(currLine);
-                        char[] chArray = converted.toCharArray();
-                        _output.println(chArray);
-                    }
-                } else {
-                    _output.println();
+        }
+        while (_input.hasLine()) {
+            if (_input.peek() == '*') {
+                String settings = _input.readLine();
+                if (!_input.hasLine()) {
+                    break;
+                }
+                flush(enigma);
+                long start = System.nanoTime();
+                enigma.startOver();
+                _settings.setUp(enigma, settings.substring(1));
+                Metrics.INSTANCE.recordSetUp(System.nanoTime() - start);
+            } else if (_pending != null) {
+                String line = _input.readLine();
+                if (line.isEmpty() || _input.hasLine()
+                    || !Machine.isSettings(line)
+                       && Machine.letterCount(line) > 0) {
+                    emit(enigma, line);
                 }
-                prev = currLine;
-                currLine = _input.nextLine();
+            } else {
+                convertLine(enigma);
+            }
+        }
+        if (_pending != null) {
+            flush(enigma);
+            if (_inFlight != null) {
+                drain(0);
             }
         }
-        if (currLine.isEmpty()) {
-            _output.println();
+        try {
+            _output.close();
+        } catch (IOException excp) {
+            throw error("output failed: %s", excp.getMessage());
         }
+    }
 
-        String backToNormal = enigma.convert(currLine);
+    /** Configure an Enigma machine from _configuration and the settings
+     *  _binary, and apply it to the bytes of the input file (or standard
+     *  input), writing the results to the output file (or standard
+     *  output) through channels, without decoding or grouping. */
+    private void processBinary() {
+        Machine enigma = readConfig();
+        enigma.setTabulated(_tableBudget);
+        if (!(_alphabet instanceof ByteAlphabet)) {
+            throw error("binary mode needs the %s alphabet",
+                        ByteAlphabet.NAME);
+        }
+        setUp(enigma, _binary.startsWith("*") ? _binary.substring(1)
+              : _binary);
+        ByteBuffer in = ByteBuffer.allocateDirect(BINARY_BUFFER);
+        ByteBuffer out = ByteBuffer.allocateDirect(BINARY_BUFFER);
+        try (FileChannel source = _inputName == null
+                 ? new FileInputStream(FileDescriptor.in).getChannel()
+                 : FileChannel.open(Paths.get(_inputName));
+             FileChannel sink = _outputName == null
+                 ? new FileOutputStream(FileDescriptor.out).getChannel()
+                 : FileChannel.open(Paths.get(_outputName),
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.WRITE,
+                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (source.read(in) >= 0) {
+                in.flip();
+                enigma.convert(in, out);
+                in.clear();
+                out.flip();
+                while (out.hasRemaining()) {
+                    sink.write(out);
+                }
+                out.clear();
+            }
+        } catch (IOException excp) {
+            throw error("binary I/O failed: %s", excp.getMessage());
+        }
+    }
 
-        if (backToNormal == null) {
+    /** Configure an Enigma machine from _configuration and convert the
+     *  input file into the output file through memory mappings: as
+     *  bytes set up by _binary in binary mode, and otherwise as text. */
+    private void processMapped() {
+        Machine enigma = readConfig();
+        enigma.setTabulated(_tableBudget);
+        MappedConverter mapped = new MappedConverter(enigma);
+        if (_binary == null) {
+            mapped.convertText(Paths.get(_inputName), Paths.get(_outputName));
             return;
         }
-        char[] chNormal = backToNormal.toCharArray();
-        _output.println(chNormal);
-        _output.close();
+        if (!(_alphabet instanceof ByteAlphabet)) {
+            throw error("binary mode needs the %s alphabet",
+                        ByteAlphabet.NAME);
+        }
+        setUp(enigma, _binary.startsWith("*") ? _binary.substring(1)
+              : _binary);
+        mapped.convertBinary(Paths.get(_inputName), Paths.get(_outputName));
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _configuration. */
-    private Machine readConfig() {
-        try {
-
-            String check = _configuration.next();
-            if (check.contains("-")) {
-                _alphabet = new CharacterRange(check.charAt(0),
-                        check.charAt(2));
-            } else {
-                _alphabet =  new ExtraCredit(check);
+    /** Convert the current line of _input with M as it is read, a
+     *  buffer at a time, printing the result.  A blank line without
+     *  letters prints as an empty line, unless it is the last line. */
+    private void convertLine(Machine M) {
+        long start = System.nanoTime();
+        int col = 0;
+        boolean empty = true, skip = false;
+        for (int n = _input.nextChunk(); n >= 0; n = _input.nextChunk()) {
+            char[] buf = _input.buffer();
+            int k = _input.start();
+            empty = false;
+            if (col == 0) {
+                while (k < _input.start() + n
+                       && Character.isWhitespace(buf[k])) {
+                    k += 1;
+                }
+                skip |= k < _input.start() + n && buf[k] == '*';
+            }
+            if (!skip) {
+                int len = M.convert(buf, k, _input.start() + n - k,
+                                    _converted, 0, col);
+                print(_converted, 0, len);
+                col += len;
             }
-            if (!_configuration.hasNextInt()) {
-                throw new EnigmaException("number of rotors not given");
+        }
+        if (col > 0 || empty || _input.hasLine()) {
+            println("");
+        }
+        Metrics.INSTANCE.recordLine(System.nanoTime() - start);
+    }
+
+    /** Queue the message LINE to be converted with M by the next flush,
+     *  flushing now if enough has been queued. */
+    private void emit(Machine M, String line) {
+        _pending.add(line);
+        _pendingLength += line.length();
+        if (_pendingLength >= PARALLEL_BATCH) {
+            flush(M);
+        }
+    }
+
+    /** Convert and print any lines queued by emit, using M. */
+    private void flush(Machine M) {
+        if (_pending == null || _pending.isEmpty()) {
+            return;
+        }
+        if (_workers == null) {
+            for (String converted : _parallel.convert(M, _pending)) {
+                println(converted);
             }
-            int numRotsUsed = _configuration.nextInt();
-            if (!_configuration.hasNextInt()) {
-                throw new EnigmaException("number of pawls not given");
+        } else {
+            Machine copy = M.copy();
+            ArrayList<String> lines = new ArrayList<String>(_pending);
+            for (String line : lines) {
+                if (!Machine.isSettings(line)) {
+                    M.advance(Machine.letterCount(line));
+                }
             }
-            int movingRotors = _configuration.nextInt();
+            _inFlight.add(_workers.submit(() -> convertAll(copy, lines)));
+            drain(2 * WORKERS);
+        }
+        _pending.clear();
+        _pendingLength = 0;
+    }
 
-            position = _configuration.next();
-            while (_configuration.hasNext()) {
-                _allRotors.add(readRotor());
+    /** Return the conversions of LINES by M, converting with _parallel
+     *  if it is set.  Lines without letters convert to "". */
+    private String[] convertAll(Machine M, ArrayList<String> lines) {
+        if (_parallel != null) {
+            return _parallel.convert(M, lines);
+        }
+        String[] result = new String[lines.size()];
+        for (int i = 0; i < result.length; i++) {
+            long start = System.nanoTime();
+            String converted = M.convert(lines.get(i));
+            Metrics.INSTANCE.recordLine(System.nanoTime() - start);
+            result[i] = converted == null ? "" : converted;
+        }
+        return result;
+    }
+
+    /** Print the results of the oldest conversions submitted by flush,
+     *  in order, until at most LIMIT remain in progress. */
+    private void drain(int limit) {
+        while (_inFlight.size() > limit) {
+            try {
+                for (String converted : _inFlight.remove().get()) {
+                    println(converted);
+                }
+            } catch (ExecutionException excp) {
+                if (excp.getCause() instanceof EnigmaException) {
+                    throw (EnigmaException) excp.getCause();
+                }
+                throw error("conversion failed: %s", excp.getCause());
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw error("interrupted");
             }
-            _configuration.close();
-            return new Machine(_alphabet, numRotsUsed,
-                    movingRotors, _allRotors);
-        } catch (NoSuchElementException excp) {
-            throw error("Cut-off input.");
         }
     }
 
-    /** Return a rotor, reading its description from _configuration. */
-    private Rotor readRotor() {
+    /** Read the configuration from _configuration and write it to the
+     *  snapshot file _compile. */
+    private void compile() {
+        long[] stamp;
         try {
-            String ch = position.toUpperCase();
-            String setUp = _configuration.next();
-            String result = "";
-            String contin = _configuration.next();
-            while (contin.charAt(0) == '(' && _configuration.hasNext()) {
-                if (contin.charAt(contin.length() - 1) != ')') {
-                    throw new EnigmaException("Improper rotor format");
+            stamp = ConfigSnapshot.stamp(Paths.get(_configName));
+        } catch (IOException excp) {
+            throw error("can't open %s", _configName);
+        }
+        Machine enigma = readConfig();
+        ConfigSnapshot.compile(Paths.get(_compile), stamp, _alphabetName,
+                               enigma.spec(), _allRotors.names());
+    }
+
+    /** Return an Enigma machine configured from the contents of configuration
+     *  file _configuration, or of the snapshot _snapshot if it is
+     *  current. */
+    private Machine readConfig() {
+        long start = System.nanoTime();
+        if (_snapshot != null) {
+            MachineSpec spec = ConfigSnapshot.load(Paths.get(_snapshot),
+                                                   Paths.get(_configName));
+            if (spec != null) {
+                try {
+                    _configuration.close();
+                } catch (IOException excp) {
+                    /* Ignore: nothing was read. */
                 }
-                result += contin;
-                contin = _configuration.next();
+                _alphabet = spec.alphabet();
+                Metrics.INSTANCE.recordConfigParse(System.nanoTime() - start);
+                return spec.newMachine();
             }
-            if (contin.charAt(0) == '(' && !_configuration.hasNext()) {
-                result += contin;
+        }
+        try {
+
+            _alphabetName = _configuration.next();
+            _alphabet = alphabet(_alphabetName);
+            int numRotsUsed = readCount("number of rotors not given");
+            int movingRotors = readCount("number of pawls not given");
+
+            if (!_configuration.hasNext()) {
+                throw error("Cut-off input.");
             }
-            position = contin;
-            Permutation permutation = new Permutation(result, _alphabet);
-            if (setUp.charAt(0) == 'M') {
-                String notches = setUp.substring(1);
-                return new MovingRotor(ch, permutation, notches);
-            } else if (setUp.charAt(0) == 'N') {
-                return new FixedRotor(ch, permutation);
-            } else if (setUp.charAt(0) == 'R') {
-                return new Reflector(ch, permutation);
-            } else {
-                throw new EnigmaException("readRotor: error reading notch");
+            _allRotors = new RotorLibrary();
+            while (_configuration.hasNext()) {
+                readRotor();
             }
+            _configuration.close();
+            Machine result = new MachineSpec(_alphabet, numRotsUsed,
+                    movingRotors, _allRotors).newMachine();
+            Metrics.INSTANCE.recordConfigParse(System.nanoTime() - start);
+            return result;
         } catch (NoSuchElementException excp) {
+            throw error("Cut-off input.");
+        } catch (IOException excp) {
+            throw error("can't close configuration: %s", excp.getMessage());
+        }
+    }
+
+    /** Return the alphabet named by the configuration token CHECK. */
+    static Alphabet alphabet(String check) {
+        if (check.equalsIgnoreCase(ByteAlphabet.NAME)) {
+            return new ByteAlphabet();
+        } else if (check.contains("-")) {
+            return new CharacterRange(check.charAt(0), check.charAt(2));
+        } else {
+            return new ExtraCredit(check);
+        }
+    }
+
+    /** Return the count read as the next token of _configuration, with
+     *  error MISSING if there is none. */
+    private int readCount(String missing) {
+        if (!_configuration.hasNext()) {
+            throw new EnigmaException(missing);
+        }
+        try {
+            return Integer.parseInt(_configuration.next());
+        } catch (NumberFormatException excp) {
+            throw new EnigmaException(missing);
+        }
+    }
+
+    /** Add a rotor to _allRotors, reading its description from
+     *  _configuration, whose next token is its name.  Its cycles are
+     *  kept as text until the rotor is used. */
+    private void readRotor() {
+        String ch = _configuration.next().toUpperCase();
+        if (!_configuration.hasNext()) {
+            throw error("Missing description.");
+        }
+        String setUp = _configuration.next();
+        if (!_configuration.hasNext()) {
             throw error("Missing description.");
         }
+        _cycles.setLength(0);
+        while (_configuration.peek() == '(') {
+            _configuration.appendNext(_cycles);
+            if (_cycles.charAt(_cycles.length() - 1) != ')') {
+                throw new EnigmaException("Improper rotor format");
+            }
+        }
+        char type = setUp.charAt(0);
+        if (type != 'M' && type != 'N' && type != 'R') {
+            throw new EnigmaException("readRotor: error reading notch");
+        }
+        _allRotors.add(ch, type, type == 'M' ? setUp.substring(1) : "",
+                       _cycles);
     }
 
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
-        Scanner setting = new Scanner(settings);
-
+    static void setUp(Machine M, String settings) {
+        int k = 0;
         String[] insertRotors = new String[M.numRotors()];
         for (int i = 0; i < M.numRotors(); i++) {
-            insertRotors[i] = setting.next();
+            int start = skipBlanks(settings, k);
+            k = tokenEnd(settings, start);
+            if (start == k) {
+                throw error("missing rotor in settings");
+            }
+            insertRotors[i] = settings.substring(start, k);
         }
 
         for (int ind = 0; ind < insertRotors.length; ind++) {
@@ -202,59 +610,177 @@ public final class Main {
         }
 
         M.insertRotors(insertRotors);
-        String initialSetting = setting.next();
-        M.setRotors(initialSetting);
-        String plugboard = "";
-        if (setting.hasNext()) {
-            while (setting.hasNext()) {
-                plugboard += setting.next();
-            }
-            M.setPlugboard(new Permutation(plugboard, _alphabet));
-        } else {
-            M.setPlugboard(new Permutation("(A)", _alphabet));
+        int start = skipBlanks(settings, k);
+        k = tokenEnd(settings, start);
+        if (start == k) {
+            throw error("missing rotor positions in settings");
         }
+        M.setRotors(settings.substring(start, k));
+        M.setPlugboard(permutation(settings.substring(k), M.alphabet()));
 
         if (M.rotorsInUse().get(0).getClass() != Reflector.class) {
             throw new EnigmaException("First Rotor must be a Reflector");
         }
     }
 
+    /** Return the index of the first non-blank character of S at or
+     *  after K, or S.length() if none. */
+    static int skipBlanks(String s, int k) {
+        while (k < s.length() && Character.isWhitespace(s.charAt(k))) {
+            k += 1;
+        }
+        return k;
+    }
+
+    /** Return the index of the first blank character of S at or after K,
+     *  or S.length() if none. */
+    static int tokenEnd(String s, int k) {
+        while (k < s.length() && !Character.isWhitespace(s.charAt(k))) {
+            k += 1;
+        }
+        return k;
+    }
+
+    /** Return the permutation of ALPHA given in cycle notation by CYCLES,
+     *  written in hexadecimal if ALPHA is the byte alphabet. */
+    static Permutation permutation(String cycles, Alphabet alpha) {
+        if (alpha instanceof ByteAlphabet) {
+            return new Permutation(ByteAlphabet.cycles(cycles), alpha);
+        }
+        return new Permutation(cycles, alpha);
+    }
+
     /** Print MSG in groups of five (except that the last group may
      *  have fewer letters). */
     private void printMessageLine(String msg) {
         for (int i = 0; i < msg.length(); i += 5) {
             int cap = msg.length() - i;
             if (cap <= 6) {
-                _output.println(msg.substring(i, i + cap));
+                println(msg.substring(i, i + cap));
             } else {
-                _output.print(msg.substring(i, i + 5) + " ");
+                char[] group = (msg.substring(i, i + 5) + " ").toCharArray();
+                print(group, 0, group.length);
             }
         }
     }
 
+    /** Write LINE and a line separator to _output. */
+    private void println(String line) {
+        try {
+            _output.write(line);
+            _output.write(System.lineSeparator());
+        } catch (IOException excp) {
+            throw error("output failed: %s", excp.getMessage());
+        }
+    }
+
+    /** Write CHARS[OFF .. OFF+LEN-1] to _output. */
+    private void print(char[] chars, int off, int len) {
+        try {
+            _output.write(chars, off, len);
+        } catch (IOException excp) {
+            throw error("output failed: %s", excp.getMessage());
+        }
+    }
+
+
+    /** True iff machines convert with composed turnover segments. */
+    private boolean _segmented;
+
+    /** Settings line for binary mode, or null to process text. */
+    private String _binary;
+
+    /** Configurations of recent settings lines. */
+    private final SettingsCache _settings =
+        new SettingsCache(SettingsCache.BUDGET);
+
+    /** Budget for machine state tables, or 0 not to tabulate. */
+    private long _tableBudget;
+
+    /** True iff text is read and written by a separate Pipeline. */
+    private boolean _pipelined;
+
+    /** Number of blocks in each direction of a Pipeline. */
+    private static final int PIPELINE_BLOCKS = 8;
+
+    /** True iff files are converted through memory mappings. */
+    private boolean _mapped;
+
+    /** Names of the input and output files in binary or mapped mode, or
+     *  null for the standard input and output. */
+    private String _inputName, _outputName;
+
+    /** Size of each buffer used in binary mode. */
+    private static final int BINARY_BUFFER = 1 << 20;
+
+    /** Local port to serve requests on, or -1 to process the input. */
+    private int _port = -1;
+
+    /** Number of message characters queued before a parallel flush. */
+    private static final int PARALLEL_BATCH = 1 << 22;
+
+    /** Converter used in parallel mode, else null. */
+    private ParallelConverter _parallel;
+
+    /** Message lines awaiting conversion in parallel mode, else null. */
+    private ArrayList<String> _pending;
+
+    /** Total length of the lines in _pending. */
+    private int _pendingLength;
+
+    /** Number of threads converting sections concurrently. */
+    private static final int WORKERS =
+        Runtime.getRuntime().availableProcessors();
+
+    /** Threads converting sections in --sections mode, else null. */
+    private ExecutorService _workers;
+
+    /** Conversions submitted to _workers whose results have not yet
+     *  been printed, oldest first. */
+    private ArrayDeque<Future<String[]>> _inFlight;
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private LineReader _input;
+
+    /** Source of machine configuration. */
+    private ConfigReader _configuration;
+
+    /** Name of the configuration file. */
+    private String _configName;
+
+    /** Configuration token naming _alphabet, if read from text. */
+    private String _alphabetName;
 
-    /** Source of machine configuration. Just nextLine. */
-    private Scanner _configuration;
+    /** Snapshot file to compile the configuration into, or null. */
+    private String _compile;
+
+    /** Snapshot file to read the configuration from if current, or
+     *  null. */
+    private String _snapshot;
 
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
-    /** General type - Collection - of all given ROTORS. */
-    private ArrayList<Rotor> _allRotors;
+    private Writer _output;
+
+    /** Size of the buffer of _output, in characters. */
+    private static final int OUTPUT_BUFFER = 1 << 16;
+
+    /** Converted characters of the current piece of a message line. */
+    private final char[] _converted =
+        new char[LineReader.BUFFER + LineReader.BUFFER / 5 + 2];
+    /** Descriptions of all given ROTORS. */
+    private RotorLibrary _allRotors;
+
+    /** Cycles of the rotor being read by readRotor. */
+    private final StringBuilder _cycles = new StringBuilder();
 
     /** NAME of curr Rotor. */
     private String name;
 
     /** Type and NOTCHES of curr Rotor. */
     private String notch;
-
-    /** Tracker of readRotor POSITION. */
-    private String position;
 }
 
 /**
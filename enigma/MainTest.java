@@ -0,0 +1,60 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Main class.
+ *  @author Anastasia Sukhorebraya
+ */
+public class MainTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    @Test
+    public void testOutputKeptOnError() throws IOException {
+        Path config = Files.createTempFile("enigma", ".conf");
+        Path input = Files.createTempFile("enigma", ".inp");
+        Path output = Files.createTempFile("enigma", ".out");
+        try {
+            Files.writeString(config, "A-Z 3 0\n"
+                + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)"
+                + " (RX) (SZ) (TV)\n"
+                + " BETA N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+                + " GAMMA N (AFNIRLBSQWVXGUZDKMTPCOYJHE)\n");
+            Files.writeString(input, "* B BETA GAMMA CD (AB)\n"
+                + "HELLO WORLD\n* B DELTA GAMMA CD\nHELLO\n");
+            String[] files = {
+                config.toString(), input.toString(), output.toString()
+            };
+            for (String mode : new String[] {"", "--sections", "--parallel"}) {
+                List<String> args = new ArrayList<>(List.of(files));
+                if (!mode.isEmpty()) {
+                    args.add(0, mode);
+                }
+                Main main = new Main(args.toArray(new String[0]));
+                try {
+                    main.process();
+                    fail("unknown rotor accepted");
+                } catch (EnigmaException excp) {
+                    assertEquals(List.of("SWBBQ EQPBF"),
+                                 Files.readAllLines(output));
+                }
+            }
+        } finally {
+            Files.delete(config);
+            Files.delete(input);
+            Files.delete(output);
+        }
+    }
+}
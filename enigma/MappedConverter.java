@@ -0,0 +1,196 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static enigma.EnigmaException.*;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/** Converts whole files through memory mappings, so that the machine
+ *  reads its input from, and writes its output to, the mapped pages
+ *  without any decoding or copying.  Files are mapped in windows of at
+ *  most WINDOW bytes, so they may be larger than 2GB.
+ *
+ *  Text files are processed with the same line semantics as Main, with
+ *  each byte taken as an ASCII character; message lines must fit in one
+ *  window.  The output file is sized exactly before it is written, from
+ *  a first pass that counts the letters of each message line.
+ *  @author Anastasia Sukhorebraya
+ */
+class MappedConverter {
+
+    /** Largest input window mapped at once. */
+    static final long WINDOW = 1L << 30;
+
+    /** A converter using M, whose rotors have been inserted and set if
+     *  it is to convert binary files. */
+    MappedConverter(Machine m) {
+        _machine = m;
+    }
+
+    /** Convert the bytes of the file INPUT, as for Main's binary mode,
+     *  into the file OUTPUT, which has the same size. */
+    void convertBinary(Path input, Path output) {
+        try (FileChannel in = FileChannel.open(input, READ);
+             FileChannel out = FileChannel.open(output, READ, WRITE, CREATE,
+                                                TRUNCATE_EXISTING)) {
+            long size = in.size();
+            for (long pos = 0; pos < size; pos += WINDOW) {
+                long len = Math.min(WINDOW, size - pos);
+                _machine.convert(in.map(READ_ONLY, pos, len),
+                                 out.map(READ_WRITE, pos, len));
+            }
+        } catch (IOException excp) {
+            throw error("mapped I/O failed: %s", excp.getMessage());
+        }
+    }
+
+    /** Convert the messages in the text file INPUT, set up by its '*'
+     *  lines, into the file OUTPUT, as Main does for ordinary input. */
+    void convertText(Path input, Path output) {
+        try (FileChannel in = FileChannel.open(input, READ);
+             FileChannel out = FileChannel.open(output, READ, WRITE, CREATE,
+                                                TRUNCATE_EXISTING)) {
+            _sizing = true;
+            _outSize = 0;
+            forEachLine(in);
+            _sizing = false;
+            _out = out;
+            _dst = null;
+            _dstBase = 0;
+            forEachLine(in);
+            if (_dst != null) {
+                ((MappedByteBuffer) _dst).force();
+            }
+        } catch (IOException excp) {
+            throw error("mapped I/O failed: %s", excp.getMessage());
+        } finally {
+            _out = null;
+            _dst = null;
+        }
+    }
+
+    /** Call line on each line of IN, in order. */
+    private void forEachLine(FileChannel in) throws IOException {
+        long size = in.size();
+        if (size == 0) {
+            throw error("No input");
+        }
+        long pos = 0;
+        boolean first = true;
+        while (pos < size) {
+            int len = (int) Math.min(WINDOW, size - pos);
+            boolean atEnd = pos + len == size;
+            MappedByteBuffer buf = in.map(READ_ONLY, pos, len);
+            int start = 0;
+            while (start < len) {
+                int end = start;
+                while (end < len && buf.get(end) != '\n'
+                       && buf.get(end) != '\r') {
+                    end += 1;
+                }
+                if (!atEnd && (end == len || end + 1 == len
+                               && buf.get(end) == '\r')) {
+                    break;
+                }
+                int next = end;
+                if (next < len) {
+                    next += buf.get(next) == '\r' && next + 1 < len
+                        && buf.get(next + 1) == '\n' ? 2 : 1;
+                }
+                line(buf, start, end, first, atEnd && next == len);
+                first = false;
+                start = next;
+            }
+            if (start == 0 && !atEnd) {
+                throw error("line too long to map at byte %d", pos);
+            }
+            pos += start;
+        }
+    }
+
+    /** Process the line in BUF[FROM .. TO-1], which is the first line of
+     *  the input iff FIRST, and the last iff LAST: when sizing, only add
+     *  the size of its output to _outSize.  Only a '*' in the first column
+     *  starts a setting, but as for Machine.convert(String), a line whose
+     *  first non-blank character is '*' converts nothing. */
+    private void line(ByteBuffer buf, int from, int to,
+                      boolean first, boolean last) throws IOException {
+        boolean setting = to > from && buf.get(from) == '*';
+        if (first && !setting) {
+            throw error("Initial Setting must start with an asterisk");
+        }
+        if (setting) {
+            if (!last && !_sizing) {
+                byte[] text = new byte[to - from - 1];
+                buf.get(from + 1, text);
+                long start = System.nanoTime();
+                _machine.startOver();
+                Main.setUp(_machine,
+                           new String(text, StandardCharsets.ISO_8859_1));
+                Metrics.INSTANCE.recordSetUp(System.nanoTime() - start);
+            }
+            return;
+        }
+        int n = 0;
+        for (int k = from; k < to; k++) {
+            char ch = (char) buf.get(k);
+            if (!Character.isWhitespace(ch)) {
+                if (n == 0 && ch == '*') {
+                    break;
+                }
+                n += 1;
+            }
+        }
+        if (n == 0 && to > from && last) {
+            return;
+        }
+        int len = Machine.groupedLength(n) + SEPARATOR.length;
+        if (_sizing) {
+            _outSize += len;
+            return;
+        }
+        if (_dst == null || _dst.remaining() < len) {
+            if (_dst != null) {
+                _dstBase += _dst.position();
+            }
+            _dst = _out.map(READ_WRITE, _dstBase,
+                            Math.min(Integer.MAX_VALUE, _outSize - _dstBase));
+        }
+        if (n > 0) {
+            _machine.convertText(buf, from, to, _dst);
+        }
+        _dst.put(SEPARATOR);
+    }
+
+    /** Line separator written after each output line. */
+    private static final byte[] SEPARATOR =
+        System.lineSeparator().getBytes(StandardCharsets.ISO_8859_1);
+
+    /** The machine doing the converting. */
+    private final Machine _machine;
+
+    /** True during the first pass over a text file. */
+    private boolean _sizing;
+
+    /** Total size of the text output. */
+    private long _outSize;
+
+    /** The output file during the second pass. */
+    private FileChannel _out;
+
+    /** The current window of _out, or null if none is mapped. */
+    private ByteBuffer _dst;
+
+    /** Offset of _dst within _out. */
+    private long _dstBase;
+}
@@ -0,0 +1,53 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+
+/** A permutation whose tables are read in place from a ByteBuffer,
+ *  usually a read-only mapping of a ConfigSnapshot, instead of being
+ *  copied into the heap.  Any number of processes that map the same
+ *  snapshot share one copy of its tables in the operating system's page
+ *  cache, and no per-process tables are derived from them.  The tables
+ *  are trusted to form a permutation and its inverse, as they do in a
+ *  snapshot written by ConfigSnapshot.compile.
+ *  @author Anastasia Sukhorebraya
+ */
+class MappedPermutation extends Permutation {
+
+    /** A permutation of the indices of ALPHABET whose forward and inverse
+     *  tables are the ALPHABET.size() chars at positions FORWARD and
+     *  INVERSE of DATA. */
+    MappedPermutation(ByteBuffer data, int forward, int inverse,
+                      Alphabet alphabet) {
+        super(alphabet);
+        _data = data;
+        _forward = forward;
+        _inverse = inverse;
+    }
+
+    /** Returns null, so that rotors wired as me convert through my
+     *  mapped tables rather than through positional tables built in each
+     *  process's heap. */
+    @Override
+    int[][] positionalTables(long budget) {
+        return null;
+    }
+
+    @Override
+    int permute(int p) {
+        return _data.getChar(_forward + 2 * wrap(p));
+    }
+
+    @Override
+    int invert(int c) {
+        return _data.getChar(_inverse + 2 * wrap(c));
+    }
+
+    /** The buffer holding my tables, read only through absolute gets. */
+    private final ByteBuffer _data;
+
+    /** Position of my forward table in _data. */
+    private final int _forward;
+
+    /** Position of my inverse table in _data. */
+    private final int _inverse;
+}
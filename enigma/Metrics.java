@@ -0,0 +1,197 @@
+package enigma;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/** Process-wide counters describing what the enigma machines have been
+ *  doing, published as the MBean "enigma:type=Metrics".  Counters are
+ *  striped (LongAdder), and Machines accumulate their own counts in
+ *  plain fields and add them here only once per line or chunk, so the
+ *  per-character path never touches shared state.
+ *  @author Anastasia Sukhorebraya
+ */
+final class Metrics implements MetricsMBean {
+
+    /** The metrics of this process. */
+    static final Metrics INSTANCE = new Metrics();
+
+    /** Number of rotor slots counted separately by getRotorAdvances. */
+    static final int SLOTS = 16;
+
+    /** Number of buckets in the latency histograms. */
+    static final int BUCKETS = 40;
+
+    /** Use INSTANCE. */
+    private Metrics() {
+        _rotorAdvances = adders(SLOTS);
+        _setUpLatency = adders(BUCKETS);
+        _lineLatency = adders(BUCKETS);
+    }
+
+    /** Publish INSTANCE to the platform MBean server, if it is not
+     *  already there. */
+    static synchronized void register() {
+        try {
+            ObjectName name = new ObjectName("enigma:type=Metrics");
+            if (!ManagementFactory.getPlatformMBeanServer()
+                .isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(INSTANCE, name);
+            }
+        } catch (JMException excp) {
+            throw EnigmaException.error("can't register metrics: %s",
+                                        excp.getMessage());
+        }
+    }
+
+    /** Record the conversion of N characters, ADVANCES[K] advances of
+     *  the rotor K slots from the right, and DOUBLESTEPS double
+     *  steps. */
+    void recordConversion(long n, long[] advances, long doubleSteps) {
+        _charactersConverted.add(n);
+        for (int k = 0; k < advances.length && k < SLOTS; k++) {
+            if (advances[k] != 0) {
+                _rotorAdvances[k].add(advances[k]);
+            }
+        }
+        _doubleSteps.add(doubleSteps);
+    }
+
+    /** Record that a section was set up in NANOS nanoseconds. */
+    void recordSetUp(long nanos) {
+        _sectionsProcessed.increment();
+        _setUpLatency[bucket(nanos)].increment();
+    }
+
+    /** Record a lookup in a SettingsCache, which was a hit iff HIT. */
+    void recordSettingsCache(boolean hit) {
+        (hit ? _cacheHits : _cacheMisses).increment();
+    }
+
+    /** Record the eviction of N entries from a SettingsCache. */
+    void recordSettingsCacheEvictions(long n) {
+        _cacheEvictions.add(n);
+    }
+
+    /** Record that a message line was converted in NANOS nanoseconds. */
+    void recordLine(long nanos) {
+        _lineLatency[bucket(nanos)].increment();
+    }
+
+    /** Record that the configuration was parsed in NANOS nanoseconds. */
+    void recordConfigParse(long nanos) {
+        _configParseNanos = nanos;
+    }
+
+    @Override
+    public long getCharactersConverted() {
+        return _charactersConverted.sum();
+    }
+
+    @Override
+    public long getSectionsProcessed() {
+        return _sectionsProcessed.sum();
+    }
+
+    @Override
+    public long[] getRotorAdvances() {
+        return sums(_rotorAdvances);
+    }
+
+    @Override
+    public long getDoubleSteps() {
+        return _doubleSteps.sum();
+    }
+
+    @Override
+    public long getConfigParseNanos() {
+        return _configParseNanos;
+    }
+
+    @Override
+    public long getSettingsCacheHits() {
+        return _cacheHits.sum();
+    }
+
+    @Override
+    public long getSettingsCacheMisses() {
+        return _cacheMisses.sum();
+    }
+
+    @Override
+    public long getSettingsCacheEvictions() {
+        return _cacheEvictions.sum();
+    }
+
+    @Override
+    public long[] getSetUpLatencyHistogram() {
+        return sums(_setUpLatency);
+    }
+
+    @Override
+    public long[] getLineLatencyHistogram() {
+        return sums(_lineLatency);
+    }
+
+    @Override
+    public void reset() {
+        _charactersConverted.reset();
+        _sectionsProcessed.reset();
+        _doubleSteps.reset();
+        _cacheHits.reset();
+        _cacheMisses.reset();
+        _cacheEvictions.reset();
+        _configParseNanos = 0;
+        for (LongAdder[] adders
+                 : new LongAdder[][] {_rotorAdvances, _setUpLatency,
+                                      _lineLatency}) {
+            for (LongAdder a : adders) {
+                a.reset();
+            }
+        }
+    }
+
+    /** Return the histogram bucket for a time of NANOS nanoseconds. */
+    private static int bucket(long nanos) {
+        int k = 63 - Long.numberOfLeadingZeros(Math.max(nanos, 1));
+        return Math.min(k, BUCKETS - 1);
+    }
+
+    /** Return N new LongAdders. */
+    private static LongAdder[] adders(int n) {
+        LongAdder[] result = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = new LongAdder();
+        }
+        return result;
+    }
+
+    /** Return the current sums of ADDERS. */
+    private static long[] sums(LongAdder[] adders) {
+        long[] result = new long[adders.length];
+        for (int i = 0; i < adders.length; i++) {
+            result[i] = adders[i].sum();
+        }
+        return result;
+    }
+
+    /** Number of characters converted. */
+    private final LongAdder _charactersConverted = new LongAdder();
+    /** Number of sections set up. */
+    private final LongAdder _sectionsProcessed = new LongAdder();
+    /** Number of double steps. */
+    private final LongAdder _doubleSteps = new LongAdder();
+    /** Settings cache hits, misses and evictions. */
+    private final LongAdder _cacheHits = new LongAdder(),
+        _cacheMisses = new LongAdder(), _cacheEvictions = new LongAdder();
+    /** Rotor advances by slot, counted from the right. */
+    private final LongAdder[] _rotorAdvances;
+    /** Histogram of set-up times. */
+    private final LongAdder[] _setUpLatency;
+    /** Histogram of line conversion times. */
+    private final LongAdder[] _lineLatency;
+    /** Time of the last configuration parse. */
+    private volatile long _configParseNanos;
+}
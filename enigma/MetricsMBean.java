@@ -0,0 +1,47 @@
+package enigma;
+
+/** The management interface of Metrics, as seen through JMX.
+ *  @author Anastasia Sukhorebraya
+ */
+public interface MetricsMBean {
+
+    /** Returns the number of characters converted. */
+    long getCharactersConverted();
+
+    /** Returns the number of '*' settings sections set up. */
+    long getSectionsProcessed();
+
+    /** Returns the number of times the rotor in each slot has advanced,
+     *  counting slots from the right (element 0 is the fast rotor). */
+    long[] getRotorAdvances();
+
+    /** Returns the number of double steps: steps in which a rotor other
+     *  than the fast one advanced because it was itself at a notch. */
+    long getDoubleSteps();
+
+    /** Returns the time taken by the last configuration parse, in
+     *  nanoseconds. */
+    long getConfigParseNanos();
+
+    /** Returns the number of '*' lines set up from a SettingsCache. */
+    long getSettingsCacheHits();
+
+    /** Returns the number of '*' lines that missed a SettingsCache and
+     *  were parsed in full. */
+    long getSettingsCacheMisses();
+
+    /** Returns the number of entries evicted from SettingsCaches to stay
+     *  within their budgets. */
+    long getSettingsCacheEvictions();
+
+    /** Returns counts of '*' line set-up times, bucketed by powers of two
+     *  nanoseconds: element K counts times in [2**K, 2**(K+1)). */
+    long[] getSetUpLatencyHistogram();
+
+    /** Returns counts of message line conversion times, bucketed as for
+     *  getSetUpLatencyHistogram. */
+    long[] getLineLatencyHistogram();
+
+    /** Sets all counters and histograms back to zero. */
+    void reset();
+}
@@ -8,14 +8,34 @@ import static enigma.EnigmaException.*;
 class MovingRotor extends Rotor {
 
     /** A rotor named NAME whose permutation in its default setting is
-     *  PERM, and whose notches are at the positions indicated in NOTCHES.
+     *  PERM, and whose notches are at the positions indicated in NOTCHES,
+     *  which must all be in PERM's alphabet.
      *  The Rotor is initally in its 0 setting (first character of its
      *  alphabet).
      */
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         _notches = notches;
+        _notchPositions = new int[notches.length()];
+        _notchTable = new boolean[perm.size()];
+        for (int i = 0; i < notches.length(); i += 1) {
+            char notch = notches.charAt(i);
+            if (!perm.alphabet().contains(notch)) {
+                throw error("notch %c of rotor %s is not in the alphabet",
+                            notch, name);
+            }
+            _notchPositions[i] = perm.alphabet().toInt(notch);
+            _notchTable[_notchPositions[i]] = true;
+        }
+    }
 
+    /** A copy of ROTOR at its current setting, sharing its tables. */
+    private MovingRotor(MovingRotor rotor) {
+        super(rotor.name(), rotor.permutation());
+        _notches = rotor._notches;
+        _notchPositions = rotor._notchPositions;
+        _notchTable = rotor._notchTable;
+        set(rotor.setting());
     }
 
 
@@ -23,13 +43,26 @@ class MovingRotor extends Rotor {
      *  to advance. */
     @Override
     boolean atNotch() {
+        return _notchTable[position()];
+    }
 
-        for (char notch: _notches.toCharArray()) {
-            if (position() == permutation().alphabet().toInt(notch)) {
-                return true;
-            }
+    @Override
+    boolean[] notchTable() {
+        return _notchTable;
+    }
+
+    @Override
+    int toNotch() {
+        int best = Integer.MAX_VALUE;
+        for (int notch : _notchPositions) {
+            best = Math.min(best, permutation().wrap(notch - position()));
         }
-        return false;
+        return best;
+    }
+
+    @Override
+    Rotor copy() {
+        return new MovingRotor(this);
     }
 
     @Override
@@ -44,5 +77,11 @@ class MovingRotor extends Rotor {
     }
 
     /** ADDITIONAL FIELDS HERE, AS NEEDED. */
-    private String _notches;
+    private final String _notches;
+
+    /** Positions of my notches, in the order given. */
+    private final int[] _notchPositions;
+
+    /** Whether I am at a notch, indexed by position. */
+    private final boolean[] _notchTable;
 }
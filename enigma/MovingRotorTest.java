@@ -110,4 +110,45 @@ public class MovingRotorTest {
         checkRotor("Rotor III set", UPPER_STRING, NAVALZ_MAP.get("III"));
     }
 
+    @Test
+    public void checkPositionalTables() {
+        setRotor("VIII", NAVALA, "ZM");
+        assertFalse(rotor.usePositionalTables(0));
+        rotor.set(25);
+        checkRotor("Rotor VIII untabulated", UPPER_STRING,
+                   NAVALZ_MAP.get("VIII"));
+        assertTrue(rotor.usePositionalTables(Rotor.TABLE_BUDGET));
+        checkRotor("Rotor VIII tabulated", UPPER_STRING,
+                   NAVALZ_MAP.get("VIII"));
+        rotor.advance();
+        checkRotor("Rotor VIII tabulated (A)", UPPER_STRING,
+                   NAVALA_MAP.get("VIII"));
+    }
+
+    @Test
+    public void checkNotches() {
+        setRotor("VIII", NAVALA, "ZM");
+        boolean[] table = rotor.notchTable();
+        for (int p = 0; p < 26; p += 1) {
+            rotor.set(p);
+            assertEquals(p == 12 || p == 25, rotor.atNotch());
+            assertEquals(p == 12 || p == 25, table[p]);
+            assertEquals(p <= 12 ? 12 - p : 25 - p, rotor.toNotch());
+        }
+        Rotor copy = rotor.copy();
+        assertSame(table, copy.notchTable());
+        assertEquals(25, copy.setting());
+    }
+
+    @Test
+    public void checkNotchOutsideAlphabet() {
+        Alphabet ten = new ExtraCredit("ABCDEFGHIJ");
+        try {
+            new MovingRotor("M1", new Permutation("(ABCDE)", ten), "CX");
+            fail("notch outside the alphabet accepted");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("notch X"));
+        }
+    }
+
 }
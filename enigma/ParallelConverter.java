@@ -0,0 +1,149 @@
+package enigma;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Converts long runs of message text on a ForkJoinPool.  The letters
+ *  are split into chunks, each of which is converted by a copy of the
+ *  machine advanced directly to the chunk's offset, and the results are
+ *  written into place, grouped in fives exactly as Machine.convert does.
+ *  @author Anastasia Sukhorebraya
+ */
+class ParallelConverter {
+
+    /** Default number of letters converted by one task. */
+    static final int CHUNK = 1 << 16;
+
+    /** A converter running its tasks on POOL, each converting at most
+     *  CHUNKSIZE letters. */
+    ParallelConverter(ForkJoinPool pool, int chunkSize) {
+        _pool = pool;
+        _chunkSize = chunkSize;
+    }
+
+    /** Return the conversions of LINES by M, as successive calls of
+     *  M.convert on each of them would produce them (except that lines
+     *  without letters, and settings lines, which M.convert ignores,
+     *  convert to ""), and leave M in the state those calls would. */
+    String[] convert(Machine m, List<String> lines) {
+        Alphabet alpha = m.alphabet();
+        int[] starts = new int[lines.size() + 1];
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            starts[i + 1] = starts[i]
+                + (Machine.isSettings(line) ? 0 : Machine.letterCount(line));
+        }
+        int[] letters = new int[starts[lines.size()]];
+        char[][] outs = new char[lines.size()][];
+        for (int i = 0, g = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            for (int k = 0; starts[i + 1] > starts[i] && k < line.length();
+                 k++) {
+                char ch = line.charAt(k);
+                if (!Character.isWhitespace(ch)) {
+                    letters[g] = alpha.toInt(Character.toUpperCase(ch));
+                    g += 1;
+                }
+            }
+            outs[i] = new char[Machine.groupedLength(starts[i + 1]
+                                                     - starts[i])];
+            for (int k = 5; k < outs[i].length; k += 6) {
+                outs[i][k] = ' ';
+            }
+        }
+
+        _pool.invoke(new Chunk(m, letters, starts, outs, 0, letters.length,
+                               _chunkSize));
+        m.advance(letters.length);
+
+        String[] result = new String[lines.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = new String(outs[i]);
+        }
+        return result;
+    }
+
+    /** Converts the letters in one range, splitting it if it is larger
+     *  than a given size. */
+    private static class Chunk extends RecursiveAction {
+
+        /** Converts LETTERS[FROM .. TO-1] (alphabet indices), which
+         *  follow the letters converted by M in its current state, into
+         *  OUTS, where line I holds the letters from STARTS[I] up to
+         *  STARTS[I + 1], in pieces of at most CHUNKSIZE letters. */
+        Chunk(Machine m, int[] letters, int[] starts, char[][] outs,
+              int from, int to, int chunkSize) {
+            _m = m;
+            _letters = letters;
+            _starts = starts;
+            _outs = outs;
+            _from = from;
+            _to = to;
+            _chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from > _chunkSize) {
+                int mid = _from + (_to - _from) / 2;
+                invokeAll(new Chunk(_m, _letters, _starts, _outs,
+                                    _from, mid, _chunkSize),
+                          new Chunk(_m, _letters, _starts, _outs,
+                                    mid, _to, _chunkSize));
+                return;
+            }
+            Machine mach = _m.copy();
+            mach.advance(_from);
+            Alphabet alpha = mach.alphabet();
+            int[] converted = new int[_to - _from];
+            mach.convert(_letters, _from, _to - _from, converted, 0);
+            int line = lineOf(_from);
+            for (int g = _from; g < _to; g++) {
+                while (g >= _starts[line + 1]) {
+                    line += 1;
+                }
+                int k = g - _starts[line];
+                _outs[line][k + k / 5] = alpha.toChar(converted[g - _from]);
+            }
+        }
+
+        /** Return the line containing letter G. */
+        private int lineOf(int g) {
+            int lo = 0, hi = _starts.length - 2;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) / 2;
+                if (_starts[mid] <= g) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return lo;
+        }
+
+        /** Machine in the state preceding letter 0. */
+        private final Machine _m;
+        /** All letters to convert, as alphabet indices. */
+        private final int[] _letters;
+        /** Index of the first letter of each line, followed by the total
+         *  number of letters. */
+        private final int[] _starts;
+        /** Output buffers, one per line. */
+        private final char[][] _outs;
+        /** Range of letters converted by this task. */
+        private final int _from, _to;
+        /** Largest number of letters converted without splitting. */
+        private final int _chunkSize;
+
+        /** Tasks are never serialized; this only satisfies the
+         *  Serializable contract inherited from ForkJoinTask. */
+        private static final long serialVersionUID = 1L;
+    }
+
+    /** Pool running the conversion tasks. */
+    private final ForkJoinPool _pool;
+
+    /** Largest number of letters converted by one task. */
+    private final int _chunkSize;
+}
@@ -1,10 +1,6 @@
 package enigma;
 
-import java.util.Map;
-import java.util.HashMap;
-
-import java.util.Set;
-import java.util.Map.Entry;
+import java.util.Arrays;
 
 import static enigma.EnigmaException.*;
 
@@ -18,51 +14,117 @@ class Permutation {
      *  form "(cccc) (cc) ..." where the c's are characters in ALPHABET, which
      *  is interpreted as a permutation in cycle notation.  Characters in the
      *  alphabet that are not included in any cycle map to themselves.
-     *  Whitespace is ignored. */
+     *  Whitespace is ignored.  CYCLES is parsed in a single pass straight
+     *  into my tables; misplaced parentheses, characters outside the
+     *  alphabet and characters appearing twice are reported with their
+     *  position in CYCLES. */
 
     Permutation(String cycles, Alphabet alphabet) {
 
         _alphabet = alphabet;
-        dictionary = new HashMap<Character, Character>();
-        invDictionary = new HashMap<Character, Character>();
-
-        String[] toSplit = cycles.split("\\)");
-        for (String cycle: toSplit) {
-            cycle = cycle.replaceAll("\\(", "");
-            cycle = cycle.replaceAll(" ", "");
-            cycle = cycle.replaceAll("\\)", "");
-            cycle = cycle.replaceAll("[)(]", "");
-
-            addCycle(cycle);
+        _size = alphabet.size();
+        _forward = new int[_size];
+        _inverse = new int[_size];
+        for (int i = 0; i < _forward.length; i++) {
+            _forward[i] = i;
+            _inverse[i] = i;
         }
 
-        for (int i = 0; i < _alphabet.size(); i++) {
-            if (!dictionary.containsKey(_alphabet.toChar(i))) {
-                dictionary.put(_alphabet.toChar(i), _alphabet.toChar(i));
-                invDictionary.put(_alphabet.toChar(i), _alphabet.toChar(i));
+        boolean[] used = new boolean[_forward.length];
+        boolean open = false;
+        int first = -1, prev = -1;
+        for (int k = 0; k < cycles.length(); k++) {
+            char ch = cycles.charAt(k);
+            if (Character.isWhitespace(ch)) {
+                continue;
+            } else if (ch == '(') {
+                if (open) {
+                    throw error("nested '(' at position %d", k);
+                }
+                open = true;
+                first = prev = -1;
+            } else if (ch == ')') {
+                if (!open) {
+                    throw error("unmatched ')' at position %d", k);
+                }
+                if (first >= 0) {
+                    link(prev, first);
+                }
+                open = false;
+            } else if (!open) {
+                throw error("character %c outside a cycle at position %d",
+                            ch, k);
+            } else {
+                int c = index(ch, k);
+                if (used[c]) {
+                    throw error("character %c repeated at position %d",
+                                ch, k);
+                }
+                used[c] = true;
+                if (first < 0) {
+                    first = c;
+                } else {
+                    link(prev, c);
+                }
+                prev = c;
             }
         }
+        if (open) {
+            throw error("unclosed cycle at position %d", cycles.length());
+        }
     }
 
-    /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
-    private void addCycle(String cycle) {
+    /** Set this Permutation to the one taking each index I of ALPHABET to
+     *  FORWARD[I], which must be a permutation of 0 .. ALPHABET.size()-1.
+     *  FORWARD is copied. */
+    Permutation(int[] forward, Alphabet alphabet) {
+        _alphabet = alphabet;
+        _size = forward.length;
+        _forward = forward.clone();
+        _inverse = new int[_size];
+        if (_forward.length != alphabet.size()) {
+            throw error("permutation table does not match its alphabet");
+        }
+        Arrays.fill(_inverse, -1);
+        for (int i = 0; i < _forward.length; i++) {
+            int to = _forward[i];
+            if (to < 0 || to >= _forward.length || _inverse[to] != -1) {
+                throw error("permutation table is not a permutation");
+            }
+            _inverse[to] = i;
+        }
+    }
 
-        for (int i = 0; i < cycle.length(); i++) {
-            if (i  == cycle.length() - 1) {
-                dictionary.put(cycle.charAt(i), cycle.charAt(0));
-                invDictionary.put(cycle.charAt(0), cycle.charAt(i));
+    /** A permutation of the indices of ALPHABET whose tables are kept by
+     *  a subclass, which must override permute(int) and invert(int). */
+    Permutation(Alphabet alphabet) {
+        _alphabet = alphabet;
+        _size = alphabet.size();
+        _forward = _inverse = null;
+    }
 
-            } else {
-                dictionary.put(cycle.charAt(i), cycle.charAt(i + 1));
-                invDictionary.put(cycle.charAt(i + 1), cycle.charAt(i));
+    /** Make FROM map to TO. */
+    private void link(int from, int to) {
+        _forward[from] = to;
+        _inverse[to] = from;
+    }
 
-            }
+    /** Return the index of C, found at position POS of a cycle string, in
+     *  my alphabet, reporting an error if C is not one of its
+     *  characters. */
+    private int index(char c, int pos) {
+        if (!_alphabet.contains(c)) {
+            throw error("character %c not in alphabet at position %d",
+                        c, pos);
         }
+        return _alphabet.toInt(c);
     }
 
     /** Return the value of P modulo the size of this permutation. */
     final int wrap(int p) {
+        if (p >= 0 && p < _size) {
+            return p;
+        }
         int r = p % size();
         if (r < 0) {
             r += size();
@@ -72,33 +134,55 @@ class Permutation {
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return _alphabet.size();
+        return _size;
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-
-        char out = permute(_alphabet.toChar(wrap(p)));
-        return _alphabet.toInt(out);
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char inChar = _alphabet.toChar(wrap(c));
-        return _alphabet.toInt(invert(inChar));
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        return (char) dictionary.get(p);
+        return _alphabet.toChar(permute(_alphabet.toInt(p)));
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        return (char) invDictionary.get(c);
+        return _alphabet.toChar(invert(_alphabet.toInt(c)));
+    }
+
+    /** Return the conversions of a rotor wired as this permutation at
+     *  every setting, as a pair of size() x size() tables indexed by
+     *  setting * size() + contact (forward, then backward), or null if
+     *  they would take more than BUDGET bytes.  The tables are computed
+     *  once and shared by all callers. */
+    synchronized int[][] positionalTables(long budget) {
+        int n = size();
+        if (2L * n * n * Integer.BYTES > budget) {
+            return null;
+        }
+        if (_positional == null) {
+            int[] forward = new int[n * n];
+            int[] backward = new int[n * n];
+            for (int posn = 0; posn < n; posn++) {
+                for (int p = 0; p < n; p++) {
+                    int contact = wrap(p + posn);
+                    forward[posn * n + p] = wrap(permute(contact) - posn);
+                    backward[posn * n + p] = wrap(invert(contact) - posn);
+                }
+            }
+            _positional = new int[][] {forward, backward};
+        }
+        return _positional;
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -109,11 +193,8 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-
-        Set<Map.Entry<Character, Character>> entrySet = dictionary.entrySet();
-
-        for (Entry pair: entrySet) {
-            if (pair.getValue() == pair.getKey()) {
+        for (int i = 0; i < _size; i++) {
+            if (permute(i) == i) {
                 return false;
             }
         }
@@ -121,11 +202,20 @@ class Permutation {
     }
 
     /** Alphabet of this permutation. */
-    private Alphabet _alphabet;
+    private final Alphabet _alphabet;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Index of the image of each alphabet index in the forward
+     *  direction, or null if kept by a subclass. */
+    private final int[] _forward;
 
-    /** Dictionary of permutations in the forward direction. */
-    private HashMap<Character, Character> dictionary;
+    /** Index of the image of each alphabet index in the backward
+     *  direction, or null if kept by a subclass. */
+    private final int[] _inverse;
 
-    /** Dictionary of permutations in the backward direction. */
-    private HashMap<Character, Character> invDictionary;
+    /** Rotor conversion tables at every setting, once computed by
+     *  positionalTables. */
+    private int[][] _positional;
 }
@@ -6,6 +6,7 @@ import org.junit.rules.Timeout;
 
 import static enigma.TestUtils.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 /** The suite of all JUnit tests for the Permutation class.
  *  @author Anastasia Sukhorebraya
@@ -118,4 +119,78 @@ public class PermutationTest {
         assertEquals(false, f.derangement());
         System.out.println();
     }
+
+    @Test
+    public void testIntTablesMatchChars() {
+        Alphabet digits = new ExtraCredit("0123456789");
+        Permutation p = new Permutation("(0591) (27) (3)", digits);
+        assertEquals(5, p.permute(0));
+        assertEquals(0, p.permute(1));
+        assertEquals(1, p.invert(0));
+        assertEquals(7, p.permute(12));
+        assertEquals(4, p.invert(-6));
+        assertEquals('9', p.permute('5'));
+        assertEquals('5', p.invert('9'));
+        assertEquals(false, p.derangement());
+    }
+
+    @Test
+    public void testAlphabetLookup() {
+        Alphabet custom = new ExtraCredit("AB\u4e00.9z");
+        assertEquals(6, custom.size());
+        assertEquals(2, custom.toInt('\u4e00'));
+        assertEquals('z', custom.toChar(5));
+        assertEquals(-1, custom.toInt('\u4e01'));
+        assertEquals(-1, custom.toInt('C'));
+        assertEquals(true, custom.contains('.'));
+        assertEquals(false, custom.contains('Z'));
+        assertEquals('Z', UPPER.toChar(25));
+        assertEquals(false, UPPER.contains('['));
+    }
+
+    @Test
+    public void testHexCycles() {
+        int[] table = ByteAlphabet.cycles(" (00FF1a) (4142)");
+        assertEquals(0xFF, table[0x00]);
+        assertEquals(0x1A, table[0xFF]);
+        assertEquals(0x00, table[0x1A]);
+        assertEquals(0x42, table[0x41]);
+        assertEquals(0x20, table[0x20]);
+        Permutation p = new Permutation(table, new ByteAlphabet());
+        assertEquals(0x1A, p.invert(0x00));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testRepeatedHexByte() {
+        ByteAlphabet.cycles("(0001) (01)");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testCharacterNotInAlphabet() {
+        new Permutation("(AB) (C1)", UPPER);
+    }
+
+    @Test
+    public void testMalformedCycles() {
+        String[][] cases = {
+            {"(AB) (CA)", "character A repeated at position 7"},
+            {"(AB) C", "character C outside a cycle at position 5"},
+            {"(AB(C))", "nested '(' at position 3"},
+            {"(AB))", "unmatched ')' at position 4"},
+            {"(AB", "unclosed cycle at position 3"},
+            {"(A*)", "character * not in alphabet at position 2"},
+        };
+        for (String[] c : cases) {
+            try {
+                new Permutation(c[0], UPPER);
+                fail("accepted " + c[0]);
+            } catch (EnigmaException excp) {
+                assertEquals(c[1], excp.getMessage());
+            }
+        }
+        Permutation p = new Permutation(" ( A\tB )()(C) ", UPPER);
+        assertEquals('B', p.permute('A'));
+        assertEquals('A', p.permute('B'));
+        assertEquals('C', p.permute('C'));
+    }
 }
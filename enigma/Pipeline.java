@@ -0,0 +1,293 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/** A three-stage read, convert, write pipeline.  A reader thread fills
+ *  character blocks from a source Reader and a writer thread drains
+ *  blocks of output into a sink Writer, while the converting thread,
+ *  which owns the Machine, sees them as the ordinary Reader and Writer
+ *  returned by reader() and writer().
+ *
+ *  The stages are connected by single-producer, single-consumer
+ *  RingBuffers, and a fixed set of blocks circulates between them, so
+ *  that a stage that gets ahead waits for the next one and the steady
+ *  state allocates nothing.  Closing the converting thread's Writer
+ *  closes the input rings as well, so that the reader thread stops even
+ *  when the conversion ends early.
+ *  @author Anastasia Sukhorebraya
+ */
+class Pipeline {
+
+    /** Size of each block, in characters. */
+    static final int BLOCK = 1 << 16;
+
+    /** A pipeline from SOURCE to SINK, with BLOCKS blocks in each
+     *  direction, whose reader and writer threads start at once. */
+    Pipeline(Reader source, Writer sink, int blocks) {
+        _source = source;
+        _sink = sink;
+        _freeIn = new RingBuffer<Block>(blocks + 1);
+        _filled = new RingBuffer<Block>(blocks + 1);
+        _freeOut = new RingBuffer<Block>(blocks + 1);
+        _written = new RingBuffer<Block>(blocks + 1);
+        for (int i = 0; i < blocks; i += 1) {
+            _freeIn.put(new Block());
+            _freeOut.put(new Block());
+        }
+        _readerThread = stage("enigma-reader", this::readAll);
+        _writerThread = stage("enigma-writer", this::writeAll);
+        _readerThread.start();
+        _writerThread.start();
+    }
+
+    /** Return the Reader delivering the source's characters to the
+     *  converting thread. */
+    Reader reader() {
+        return _reader;
+    }
+
+    /** Return the Writer passing the converting thread's output to the
+     *  sink.  Closing it stops the reader thread and waits for the output
+     *  to be written. */
+    Writer writer() {
+        return _writer;
+    }
+
+    /** A block of characters, of which the first LENGTH are valid. */
+    private static final class Block {
+        /** The characters. */
+        private final char[] data = new char[BLOCK];
+        /** Number of valid characters in data. */
+        private int length;
+    }
+
+    /** Marks the end of the stream in _filled and _written. */
+    private static final Block END = new Block();
+
+    /** Return a daemon thread named NAME running BODY. */
+    private static Thread stage(String name, Runnable body) {
+        Thread t = new Thread(body, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    /** Body of the reader thread: fill free blocks from _source until it
+     *  ends or fails, or the input rings are closed. */
+    private void readAll() {
+        try (Reader source = _source) {
+            while (true) {
+                Block block = _freeIn.take();
+                if (block == null) {
+                    break;
+                }
+                int n = source.read(block.data);
+                if (n < 0) {
+                    break;
+                }
+                block.length = n;
+                if (!_filled.put(block)) {
+                    break;
+                }
+            }
+        } catch (IOException excp) {
+            _readError = excp;
+        } finally {
+            _filled.put(END);
+        }
+    }
+
+    /** Body of the writer thread: write filled blocks to _sink, flushing
+     *  it whenever it has caught up, until END arrives.  After a failure,
+     *  blocks are only recycled, so that the converter never waits for a
+     *  writer that has stopped. */
+    private void writeAll() {
+        for (Block block = _written.take(); block != END;
+             block = _written.take()) {
+            if (_writeError == null) {
+                try {
+                    _sink.write(block.data, 0, block.length);
+                    if (_written.isEmpty()) {
+                        _sink.flush();
+                    }
+                } catch (IOException excp) {
+                    _writeError = excp;
+                }
+            }
+            block.length = 0;
+            _freeOut.put(block);
+        }
+        try {
+            _sink.close();
+        } catch (IOException excp) {
+            if (_writeError == null) {
+                _writeError = excp;
+            }
+        }
+    }
+
+    /** The converting thread's end of the input. */
+    private final class BlockReader extends Reader {
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (_block != null && _pos == _block.length) {
+                _freeIn.put(_block);
+                _block = null;
+            }
+            if (_block == null) {
+                if (_ended) {
+                    return -1;
+                }
+                Block next = _filled.take();
+                if (next == null) {
+                    throw new IOException("input closed");
+                } else if (next == END) {
+                    _ended = true;
+                    if (_readError != null) {
+                        throw _readError;
+                    }
+                    return -1;
+                }
+                _block = next;
+                _pos = 0;
+            }
+            int n = Math.min(len, _block.length - _pos);
+            System.arraycopy(_block.data, _pos, cbuf, off, n);
+            _pos += n;
+            return n;
+        }
+
+        @Override
+        public boolean ready() {
+            return _block != null && _pos < _block.length
+                || !_filled.isEmpty();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /** Block being read, or null. */
+        private Block _block;
+        /** Position of the next unread character in _block. */
+        private int _pos;
+        /** True once END has been taken. */
+        private boolean _ended;
+    }
+
+    /** The converting thread's end of the output. */
+    private final class BlockWriter extends Writer {
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, room());
+                System.arraycopy(cbuf, off, _block.data, _block.length, n);
+                _block.length += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, room());
+                str.getChars(off, off + n, _block.data, _block.length);
+                _block.length += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            check();
+            if (_block != null && _block.length > 0) {
+                _written.put(_block);
+                _block = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (_closed) {
+                return;
+            }
+            _closed = true;
+            _freeIn.close();
+            _filled.close();
+            try {
+                flush();
+            } finally {
+                _written.put(END);
+            }
+            try {
+                _writerThread.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted");
+            }
+            check();
+        }
+
+        /** Return the space left in the current block, first handing a
+         *  full block to the writer thread. */
+        private int room() throws IOException {
+            check();
+            if (_block != null && _block.length == BLOCK) {
+                _written.put(_block);
+                _block = null;
+            }
+            if (_block == null) {
+                _block = _freeOut.take();
+            }
+            return BLOCK - _block.length;
+        }
+
+        /** Throw the writer thread's failure, if any. */
+        private void check() throws IOException {
+            if (_writeError != null) {
+                throw _writeError;
+            }
+        }
+
+        /** Block being filled, or null. */
+        private Block _block;
+        /** True once closed. */
+        private boolean _closed;
+    }
+
+    /** Source of input characters, read only by the reader thread. */
+    private final Reader _source;
+
+    /** Destination of output, written only by the writer thread. */
+    private final Writer _sink;
+
+    /** Empty input blocks, from converter to reader thread. */
+    private final RingBuffer<Block> _freeIn;
+
+    /** Filled input blocks, from reader thread to converter. */
+    private final RingBuffer<Block> _filled;
+
+    /** Empty output blocks, from writer thread to converter. */
+    private final RingBuffer<Block> _freeOut;
+
+    /** Filled output blocks, from converter to writer thread. */
+    private final RingBuffer<Block> _written;
+
+    /** The stage threads. */
+    private final Thread _readerThread, _writerThread;
+
+    /** The converter's end of the input. */
+    private final BlockReader _reader = new BlockReader();
+
+    /** The converter's end of the output. */
+    private final BlockWriter _writer = new BlockWriter();
+
+    /** Failure of the reader thread, reported at the end of input. */
+    private volatile IOException _readError;
+
+    /** First failure of the writer thread. */
+    private volatile IOException _writeError;
+}
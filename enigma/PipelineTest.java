@@ -0,0 +1,114 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Pipeline and RingBuffer
+ *  classes.
+ *  @author Anastasia Sukhorebraya
+ */
+public class PipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    @Test
+    public void testRingOrder() throws InterruptedException {
+        RingBuffer<Integer> ring = new RingBuffer<>(3);
+        assertTrue(ring.isEmpty());
+        for (int i = 0; i < 4; i += 1) {
+            assertTrue(ring.offer(i));
+        }
+        assertFalse(ring.offer(4));
+        assertEquals(0, (int) ring.poll());
+
+        final int count = 100000;
+        RingBuffer<Integer> shared = new RingBuffer<>(8);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; i += 1) {
+                shared.put(i);
+            }
+        });
+        producer.start();
+        for (int i = 0; i < count; i += 1) {
+            assertEquals(i, (int) shared.take());
+        }
+        producer.join();
+        assertNull(shared.poll());
+    }
+
+    @Test
+    public void testCloseReleasesWaiters() throws InterruptedException {
+        RingBuffer<Integer> empty = new RingBuffer<>(2);
+        Integer[] taken = { 0 };
+        Thread consumer = new Thread(() -> taken[0] = empty.take());
+        consumer.start();
+        RingBuffer<Integer> full = new RingBuffer<>(1);
+        assertTrue(full.put(1));
+        boolean[] put = { true };
+        Thread producer = new Thread(() -> put[0] = full.put(2));
+        producer.start();
+        Thread.sleep(50);
+        empty.close();
+        full.close();
+        consumer.join();
+        producer.join();
+        assertNull(taken[0]);
+        assertFalse(put[0]);
+        assertEquals(1, (int) full.take());
+        assertNull(full.take());
+    }
+
+    @Test
+    public void testCloseStopsReader()
+        throws IOException, InterruptedException {
+        CountDownLatch closed = new CountDownLatch(1);
+        Reader endless = new Reader() {
+            @Override
+            public int read(char[] cbuf, int off, int len) {
+                return len;
+            }
+
+            @Override
+            public void close() {
+                closed.countDown();
+            }
+        };
+        Pipeline pipe = new Pipeline(endless, new StringWriter(), 2);
+        assertTrue(pipe.reader().read(new char[10]) > 0);
+        pipe.writer().close();
+        /* The reader thread must give up on the unread input. */
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCopiesThrough() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5 * Pipeline.BLOCK + 17; i += 1) {
+            text.append((char) ('A' + i % 23));
+        }
+        StringWriter sink = new StringWriter();
+        Pipeline pipe = new Pipeline(new StringReader(text.toString()),
+                                     sink, 2);
+        Reader in = pipe.reader();
+        Writer out = pipe.writer();
+        char[] buf = new char[1000];
+        for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+            out.write(buf, 0, n);
+        }
+        out.close();
+        assertEquals(text.toString(), sink.toString());
+    }
+}
@@ -0,0 +1,164 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/** A bounded first-in, first-out queue connecting exactly one producer
+ *  thread to exactly one consumer thread without locks.  Each side owns
+ *  one of two counters and only reads the other, so an offer or poll is
+ *  a few plain array accesses and one volatile write.  The blocking put
+ *  and take apply backpressure by spinning briefly, then yielding, then
+ *  parking until the other side unparks them or the ring is closed.
+ *  @author Anastasia Sukhorebraya
+ */
+class RingBuffer<T> {
+
+    /** A ring holding at least CAPACITY items. */
+    RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 1));
+        if (size < capacity) {
+            size <<= 1;
+        }
+        _items = new Object[size];
+        _mask = size - 1;
+    }
+
+    /** Add ITEM at the tail and return true, or return false if the ring
+     *  is full.  Only the producer may call this. */
+    boolean offer(T item) {
+        long tail = _tail.get();
+        if (tail - _head.get() == _items.length) {
+            return false;
+        }
+        _items[(int) tail & _mask] = item;
+        _tail.set(tail + 1);
+        wake(_consumer);
+        return true;
+    }
+
+    /** Remove and return the item at the head, or return null if the ring
+     *  is empty.  Only the consumer may call this. */
+    @SuppressWarnings("unchecked")
+    T poll() {
+        long head = _head.get();
+        if (head == _tail.get()) {
+            return null;
+        }
+        int k = (int) head & _mask;
+        T item = (T) _items[k];
+        _items[k] = null;
+        _head.set(head + 1);
+        wake(_producer);
+        return item;
+    }
+
+    /** Add ITEM at the tail, waiting while the ring is full, and return
+     *  true.  Return false instead, dropping ITEM, once the ring is
+     *  closed or the calling thread is interrupted. */
+    boolean put(T item) {
+        for (int spins = 0; !offer(item); spins += 1) {
+            if (stopped()) {
+                return false;
+            }
+            if (spins < 2 * SPINS) {
+                backOff(spins);
+            } else {
+                _producer = Thread.currentThread();
+                if (tailRoom() == 0 && !stopped()) {
+                    LockSupport.park(this);
+                }
+                _producer = null;
+            }
+        }
+        return true;
+    }
+
+    /** Remove and return the item at the head, waiting while the ring is
+     *  empty.  Return null once the ring is closed and empty, or the
+     *  calling thread is interrupted. */
+    T take() {
+        for (int spins = 0;; spins += 1) {
+            T item = poll();
+            if (item != null) {
+                return item;
+            } else if (stopped()) {
+                return poll();
+            } else if (spins < 2 * SPINS) {
+                backOff(spins);
+            } else {
+                _consumer = Thread.currentThread();
+                if (isEmpty() && !stopped()) {
+                    LockSupport.park(this);
+                }
+                _consumer = null;
+            }
+        }
+    }
+
+    /** Return true iff the ring currently holds no items. */
+    boolean isEmpty() {
+        return _head.get() == _tail.get();
+    }
+
+    /** Close the ring, so that put and take stop waiting.  Items already
+     *  added may still be taken.  Either side, or a third thread, may
+     *  call this. */
+    void close() {
+        _closed = true;
+        wake(_producer);
+        wake(_consumer);
+    }
+
+    /** Return the number of free slots. */
+    private int tailRoom() {
+        return _items.length - (int) (_tail.get() - _head.get());
+    }
+
+    /** Return true iff a waiting put or take should give up. */
+    private boolean stopped() {
+        return _closed || Thread.currentThread().isInterrupted();
+    }
+
+    /** Unpark WAITER, if it is not null. */
+    private static void wake(Thread waiter) {
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /** Wait a little before retrying for the SPINS-th time. */
+    private static void backOff(int spins) {
+        if (spins < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+    }
+
+    /** Number of busy retries, and then of yielding retries. */
+    private static final int SPINS = 128;
+
+    /** The slots, of which there are a power of two. */
+    private final Object[] _items;
+
+    /** Mask reducing a counter to a slot index. */
+    private final int _mask;
+
+    /** Number of items ever removed; written only by the consumer. */
+    private final AtomicLong _head = new AtomicLong();
+
+    /** Number of items ever added; written only by the producer. */
+    private final AtomicLong _tail = new AtomicLong();
+
+    /** The producer while it is parked or about to park, else null.  It
+     *  publishes itself here before rechecking for room, and the
+     *  consumer reads this after each poll, so a wakeup is never lost. */
+    private volatile Thread _producer;
+
+    /** The consumer while it is parked or about to park, else null, set
+     *  and read like _producer. */
+    private volatile Thread _consumer;
+
+    /** True once closed. */
+    private volatile boolean _closed;
+}
@@ -12,6 +12,7 @@ class Rotor {
         _name = name;
         _permutation = perm;
         _position = 0;
+        usePositionalTables(TABLE_BUDGET);
     }
 
     /** Return my name. */
@@ -52,17 +53,48 @@ class Rotor {
     /** Set setting() to POSN.  */
     void set(int posn) {
         _position = _permutation.wrap(posn);
+        _base = _position * size();
     }
 
     /** Set setting() to character CPOSN. */
     void set(char cposn) {
-        _position = _permutation.wrap(alphabet().toInt(cposn));
+        set(alphabet().toInt(cposn));
+    }
+
+    /** Use precomputed conversions at every setting, provided the two
+     *  size() x size() tables fit in BUDGET bytes.  Returns true iff
+     *  positional tables are (now) in use.  The tables are shared with
+     *  every other rotor having my permutation. */
+    boolean usePositionalTables(long budget) {
+        int[][] tables = _permutation.positionalTables(budget);
+        if (tables == null) {
+            _forwardTable = _backwardTable = null;
+            return false;
+        }
+        _forwardTable = tables[0];
+        _backwardTable = tables[1];
+        return true;
+    }
+
+    /** Return my forward conversions at every setting, indexed by
+     *  setting * size() + contact, or null if I am not using positional
+     *  tables.  The table must not be modified. */
+    int[] forwardTable() {
+        return _forwardTable;
+    }
+
+    /** Return my backward conversions at every setting, laid out as
+     *  forwardTable(), or null. */
+    int[] backwardTable() {
+        return _backwardTable;
     }
 
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-
+        if (_forwardTable != null) {
+            return _forwardTable[_base + p];
+        }
         int contact = _permutation.wrap(p + _position);
         int perm = _permutation.permute(contact);
         int setting = _permutation.wrap(perm - _position);
@@ -72,7 +104,9 @@ class Rotor {
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-
+        if (_backwardTable != null) {
+            return _backwardTable[_base + e];
+        }
         int contact = _permutation.wrap(e + _position);
         int inv = _permutation.invert(contact);
         return _permutation.wrap(inv - _position);
@@ -84,24 +118,59 @@ class Rotor {
         return false;
     }
 
+    /** Return a table of whether I am at a notch, indexed by setting, or
+     *  null if I have no notches.  The table must not be modified. */
+    boolean[] notchTable() {
+        return null;
+    }
+
+    /** Return the number of advances after which I will next be at a
+     *  notch (0 if atNotch()), or Integer.MAX_VALUE if never. */
+    int toNotch() {
+        return Integer.MAX_VALUE;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
 
+    /** Return a new rotor like me, at my current setting, that shares
+     *  my permutation and its tables. */
+    Rotor copy() {
+        Rotor result = new Rotor(_name, _permutation);
+        result.set(_position);
+        return result;
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
     }
 
+    /** Default memory budget, in bytes, for the positional tables of a
+     *  single rotor. */
+    static final long TABLE_BUDGET = 1 << 18;
+
     /** My name. */
     private final String _name;
 
     /** The permutation implemented by this rotor in its 0 position. */
-    private Permutation _permutation;
+    private final Permutation _permutation;
 
     /** Rotor's position. */
     private int _position;
 
+    /** Offset of the current setting's row in the positional tables. */
+    private int _base;
+
+    /** Forward conversions at every setting, indexed by
+     *  setting * size() + contact, or null if not tabulated. */
+    private int[] _forwardTable;
+
+    /** Backward conversions at every setting, laid out as _forwardTable,
+     *  or null if not tabulated. */
+    private int[] _backwardTable;
+
     /** Gets @return _position returns current setting. */
     public int position() {
         return _position;
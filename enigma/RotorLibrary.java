@@ -0,0 +1,88 @@
+package enigma;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/** The rotors described by a configuration, each kept as its name,
+ *  type, notches and the text of its cycles, and built into a Rotor only
+ *  when asked for.  A configuration may describe far more rotors than a
+ *  machine ever uses; a library costs little more than the text of
+ *  their cycles, with no wiring tables.  The cycles of all rotors share
+ *  one buffer, in which each rotor has a span.
+ *
+ *  Rotors are added while a configuration is read; see RotorSource for
+ *  the rules once a library is in use.
+ *  @author Anastasia Sukhorebraya
+ */
+class RotorLibrary implements RotorSource {
+
+    /** Add a rotor named NAME of type TYPE ('M' for moving, 'N' for
+     *  fixed, or 'R' for a reflector) with notches NOTCHES and wiring
+     *  given by the cycle notation CYCLES, replacing any rotor of that
+     *  name. */
+    void add(String name, char type, String notches, CharSequence cycles) {
+        int from = _cycles.length();
+        _cycles.append(cycles);
+        _entries.put(name, new Entry(type, notches, from, _cycles.length()));
+    }
+
+    @Override
+    public boolean contains(String name) {
+        return _entries.containsKey(name);
+    }
+
+    /** Return the number of rotors I describe. */
+    int size() {
+        return _entries.size();
+    }
+
+    /** Return the names of the rotors I describe, in the order in which
+     *  they were first added. */
+    Set<String> names() {
+        return Collections.unmodifiableSet(_entries.keySet());
+    }
+
+    @Override
+    public Rotor build(String name, Alphabet alpha) {
+        Entry entry = _entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        Permutation perm =
+            Main.permutation(_cycles.substring(entry._from, entry._to), alpha);
+        if (entry._type == 'M') {
+            return new MovingRotor(name, perm, entry._notches);
+        } else if (entry._type == 'N') {
+            return new FixedRotor(name, perm);
+        } else {
+            return new Reflector(name, perm);
+        }
+    }
+
+    /** The description of one rotor. */
+    private static final class Entry {
+        /** A rotor of type TYPE with notches NOTCHES, whose cycles are
+         *  _cycles[FROM .. TO-1]. */
+        Entry(char type, String notches, int from, int to) {
+            _type = type;
+            _notches = notches;
+            _from = from;
+            _to = to;
+        }
+
+        /** Type of rotor: 'M', 'N' or 'R'. */
+        private final char _type;
+        /** Notches of a moving rotor. */
+        private final String _notches;
+        /** Span of my cycles in _cycles. */
+        private final int _from, _to;
+    }
+
+    /** The cycles of all rotors, end to end. */
+    private final StringBuilder _cycles = new StringBuilder();
+
+    /** Descriptions of rotors by name. */
+    private final LinkedHashMap<String, Entry> _entries =
+        new LinkedHashMap<>();
+}
@@ -0,0 +1,42 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import static enigma.TestUtils.*;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the RotorLibrary class.
+ *  @author Anastasia Sukhorebraya
+ */
+public class RotorLibraryTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testRotorLibrary() {
+        RotorLibrary library = new RotorLibrary();
+        library.add("B", 'R', "", NAVALA.get("B"));
+        library.add("BETA", 'N', "", NAVALA.get("Beta"));
+        library.add("I", 'M', "Q", NAVALA.get("I"));
+        library.add("II", 'M', "E", NAVALA.get("II"));
+        library.add("III", 'M', "V", NAVALA.get("III"));
+        library.add("BROKEN", 'M', "A", "(AB)(AC)");
+        MachineSpec spec = new MachineSpec(UPPER, 5, 3, library);
+        Machine mach = spec.newMachine();
+        mach.insertRotors(new String[] {"B", "BETA", "I", "II", "III"});
+        mach.setRotors("AAAA");
+        mach.setPlugboard(new Permutation("", UPPER));
+        assertEquals("ILBDA AMTAZ", mach.convert("Hello world"));
+        assertNull(spec.rotor("IV"));
+        try {
+            spec.rotor("BROKEN");
+            fail("bad wiring accepted");
+        } catch (EnigmaException excp) {
+            /* Reported only when the rotor is first used. */
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package enigma;
+
+/** A collection of rotor descriptions from which a MachineSpec builds the
+ *  rotors it is asked for, each the first time it is needed.  Once in
+ *  use by a MachineSpec, a source must not change, and may be read by
+ *  any number of threads.
+ *  @author Anastasia Sukhorebraya
+ */
+interface RotorSource {
+
+    /** Return true iff I describe a rotor named NAME. */
+    boolean contains(String name);
+
+    /** Return a new rotor named NAME over alphabet ALPHA, at its 0
+     *  setting, or null if I describe no such rotor. */
+    Rotor build(String name, Alphabet alpha);
+}
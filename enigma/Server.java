@@ -0,0 +1,217 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running conversion service on a local TCP port, sharing one
+ *  parsed MachineSpec among all connections.  Each connection is served
+ *  on its own thread and may carry any number of requests.
+ *
+ *  A request is two frames: a settings line in the format of the '*'
+ *  lines of an input file (the '*' is optional), then the message.  A
+ *  frame is a 4-byte big-endian length followed by that many bytes of
+ *  UTF-8.  Each line of the message is converted as Main would convert
+ *  it, by a fresh machine set up from the settings.  The response is a
+ *  status byte (OK or FAILED) followed by one frame holding the
+ *  converted lines or the error message.
+ *  @author Anastasia Sukhorebraya
+ */
+class Server implements Closeable {
+
+    /** Response status of a successful request. */
+    static final int OK = 0;
+
+    /** Response status of a request that could not be converted. */
+    static final int FAILED = 1;
+
+    /** Largest frame accepted, in bytes. */
+    static final int MAX_FRAME = 1 << 26;
+
+    /** Delay before retrying after a first failed accept, in ms. */
+    private static final long MIN_RETRY_MILLIS = 10;
+
+    /** Longest delay between retries of a failing accept, in ms. */
+    private static final long MAX_RETRY_MILLIS = 1000;
+
+    /** A server for machines built to SPEC, listening on PORT of the
+     *  loopback interface (or on any free port if PORT is 0). */
+    Server(MachineSpec spec, int port) {
+        _spec = spec;
+        try {
+            _socket = new ServerSocket(port, 0,
+                                       InetAddress.getLoopbackAddress());
+        } catch (IOException excp) {
+            throw error("can't listen on port %d", port);
+        }
+        _connections = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Return the port I am listening on. */
+    int port() {
+        return _socket.getLocalPort();
+    }
+
+    /** Accept and serve connections until I am closed.  A failed accept
+     *  is reported on the standard error, and repeated failures are
+     *  retried after doubling delays rather than at once. */
+    void serve() {
+        long delay = 0;
+        while (true) {
+            Socket client;
+            try {
+                client = _socket.accept();
+            } catch (IOException excp) {
+                if (_socket.isClosed()) {
+                    return;
+                }
+                delay = Math.min(Math.max(2 * delay, MIN_RETRY_MILLIS),
+                                 MAX_RETRY_MILLIS);
+                System.err.printf("Error: accept failed: %s; retrying in "
+                                  + "%d ms%n", excp.getMessage(), delay);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupt) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                continue;
+            }
+            delay = 0;
+            _connections.execute(() -> handle(client));
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            _socket.close();
+        } catch (IOException excp) {
+            /* Ignore: we are shutting down anyway. */
+        }
+        _connections.shutdownNow();
+    }
+
+    /** Serve the requests arriving on CLIENT until it disconnects. */
+    private void handle(Socket client) {
+        try (Socket s = client;
+             DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(s.getOutputStream()))) {
+            while (true) {
+                String settings;
+                try {
+                    settings = readFrame(in);
+                } catch (EOFException excp) {
+                    return;
+                }
+                String msg = readFrame(in);
+                try {
+                    String result = convert(settings, msg);
+                    out.writeByte(OK);
+                    writeFrame(out, result);
+                } catch (EnigmaException | NoSuchElementException excp) {
+                    out.writeByte(FAILED);
+                    writeFrame(out, String.valueOf(excp.getMessage()));
+                }
+                out.flush();
+            }
+        } catch (IOException | EnigmaException excp) {
+            /* The connection is broken or misbehaving: drop it. */
+        }
+    }
+
+    /** Return the conversion of MSG, line by line, by a machine set up
+     *  according to SETTINGS. */
+    private String convert(String settings, String msg) {
+        Machine m = _spec.newMachine();
+        if (settings.startsWith("*")) {
+            settings = settings.substring(1);
+        }
+        long start = System.nanoTime();
+        _settings.setUp(m, settings);
+        Metrics.INSTANCE.recordSetUp(System.nanoTime() - start);
+        StringBuilder result = new StringBuilder();
+        String[] lines = msg.split("\n", -1);
+        for (int i = 0; i < lines.length; i++) {
+            if (i > 0) {
+                result.append('\n');
+            }
+            String converted = m.convert(lines[i]);
+            if (converted != null) {
+                result.append(converted);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Send a request for the conversion of MSG with SETTINGS over
+     *  CLIENT, a connection to a Server, and return the response.
+     *  Throws an EnigmaException carrying the server's message if the
+     *  request fails. */
+    static String request(Socket client, String settings, String msg)
+        throws IOException {
+        DataOutputStream out = new DataOutputStream(client.getOutputStream());
+        DataInputStream in = new DataInputStream(client.getInputStream());
+        writeFrame(out, settings);
+        writeFrame(out, msg);
+        out.flush();
+        int status = in.readByte();
+        String response = readFrame(in);
+        if (status != OK) {
+            throw new EnigmaException(response);
+        }
+        return response;
+    }
+
+    /** Return the string in the next frame of IN. */
+    private static String readFrame(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0 || len > MAX_FRAME) {
+            throw error("bad frame length %d", len);
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Write S to OUT as one frame. */
+    private static void writeFrame(DataOutputStream out, String s)
+        throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** The configuration shared by all requests. */
+    private final MachineSpec _spec;
+
+    /** Configurations of recent settings lines, shared by all
+     *  connections. */
+    private final SettingsCache _settings =
+        new SettingsCache(SettingsCache.BUDGET);
+
+    /** Socket on which connections arrive. */
+    private final ServerSocket _socket;
+
+    /** Threads serving connections, one per connection. */
+    private final ExecutorService _connections;
+}
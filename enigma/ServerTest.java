@@ -0,0 +1,60 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.net.InetAddress;
+import java.net.Socket;
+
+import static enigma.TestUtils.*;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Server class.
+ *  @author Anastasia Sukhorebraya
+ */
+public class ServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testRequests() throws Exception {
+        try (Server server = new Server(navalSpec(), 0)) {
+            new Thread(server::serve).start();
+            try (Socket client = new Socket(InetAddress.getLoopbackAddress(),
+                                            server.port())) {
+                assertEquals("ILBDA AMTAZ\n\n",
+                             Server.request(client, "* B BETA I II III AAAA",
+                                            "Hello world\n\n"));
+                assertEquals("HGGDU ZPRYS LUBAR KE",
+                             Server.request(client, "* B BETA I II III AAAA",
+                                            "I will git good at Git"));
+                assertEquals("HELLO WORLD",
+                             Server.request(client, "B BETA I II III AAAA",
+                                            "ILBDA AMTAZ"));
+                try {
+                    Server.request(client, "* B BETA I II XX AAAA", "A");
+                    fail("expected an error for an unknown rotor");
+                } catch (EnigmaException excp) {
+                    assertEquals("Rotor name doesn't exist.",
+                                 excp.getMessage());
+                }
+                assertEquals("ILBDA AMTAZ",
+                             Server.request(client, "* B BETA I II III AAAA",
+                                            "Hello world"));
+            }
+        }
+    }
+
+    @Test
+    public void testServeStopsWhenClosed() throws Exception {
+        Server server = new Server(navalSpec(), 0);
+        Thread serving = new Thread(server::serve);
+        serving.start();
+        server.close();
+        serving.join(2000);
+        assertFalse(serving.isAlive());
+    }
+}
@@ -0,0 +1,178 @@
+package enigma;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded, least-recently-used cache of the configurations set up by
+ *  '*' settings lines, so that a line that repeats (apart from its rotor
+ *  positions) is set up without being parsed or validated again.  Lines
+ *  are keyed by their rotor names, the length of their rotor positions
+ *  and their plugboard, with blanks normalized.  Each entry holds a
+ *  template machine set up from the first such line, with its rotors
+ *  checked and its non-moving rotors folded; a hit copies its rotors,
+ *  sets their positions, and shares its plugboard and, unless the
+ *  positions move the non-moving rotors, its fold (see
+ *  Machine.setUpLike).
+ *
+ *  The cache is bounded by an estimate of the bytes its entries occupy,
+ *  evicting the least recently used entries as needed.  It may be shared
+ *  by several threads.
+ *  @author Anastasia Sukhorebraya
+ */
+class SettingsCache {
+
+    /** Default budget, in bytes. */
+    static final long BUDGET = 1 << 20;
+
+    /** A cache holding about BUDGET bytes of entries. */
+    SettingsCache(long budget) {
+        _budget = budget;
+    }
+
+    /** Set up M, whose rotors have been removed with startOver,
+     *  according to SETTINGS, exactly as Main.setUp would. */
+    void setUp(Machine M, String settings) {
+        String[] names = new String[M.numRotors()];
+        int k = 0;
+        for (int i = 0; i < names.length; i += 1) {
+            int start = Main.skipBlanks(settings, k);
+            k = Main.tokenEnd(settings, start);
+            names[i] = settings.substring(start, k);
+        }
+        int start = Main.skipBlanks(settings, k);
+        k = Main.tokenEnd(settings, start);
+        String positions = settings.substring(start, k);
+        String key = key(names, positions, settings, k);
+
+        Entry entry;
+        synchronized (this) {
+            entry = positions.isEmpty() ? null : _entries.get(key);
+            if (entry != null) {
+                _hits += 1;
+            } else {
+                _misses += 1;
+            }
+        }
+        Metrics.INSTANCE.recordSettingsCache(entry != null);
+        if (entry == null) {
+            Main.setUp(M, settings);
+            add(key, new Entry(M.template(),
+                               weight(key, names, M.alphabet().size())));
+            return;
+        }
+        M.setUpLike(entry._template, positions);
+    }
+
+    /** Return the number of set-ups served from the cache. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of set-ups that were not in the cache. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Return the number of entries evicted to stay within budget. */
+    synchronized long evictions() {
+        return _evictions;
+    }
+
+    /** Return the number of entries held. */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /** Return the key for rotor NAMES, rotor positions POSITIONS and the
+     *  plugboard in SETTINGS from index K on: the names, the length of
+     *  POSITIONS and the plugboard without blanks, separated by single
+     *  blanks. */
+    private static String key(String[] names, String positions,
+                              String settings, int k) {
+        StringBuilder key = new StringBuilder();
+        for (String name : names) {
+            key.append(name).append(' ');
+        }
+        key.append(positions.length()).append(' ');
+        for (; k < settings.length(); k += 1) {
+            char ch = settings.charAt(k);
+            if (!Character.isWhitespace(ch)) {
+                key.append(ch);
+            }
+        }
+        return key.toString();
+    }
+
+    /** Add ENTRY under KEY, evicting the least recently used entries
+     *  while over budget. */
+    private synchronized void add(String key, Entry entry) {
+        if (entry._weight > _budget) {
+            return;
+        }
+        Entry old = _entries.put(key, entry);
+        if (old != null) {
+            _weight -= old._weight;
+        }
+        _weight += entry._weight;
+        int evicted = 0;
+        Iterator<Map.Entry<String, Entry>> eldest =
+            _entries.entrySet().iterator();
+        while (_weight > _budget) {
+            Map.Entry<String, Entry> e = eldest.next();
+            _weight -= e.getValue()._weight;
+            eldest.remove();
+            evicted += 1;
+        }
+        _evictions += evicted;
+        if (evicted > 0) {
+            Metrics.INSTANCE.recordSettingsCacheEvictions(evicted);
+        }
+    }
+
+    /** Return the approximate size in bytes of an entry under KEY for
+     *  rotors NAMES with an alphabet of SIZE characters: its key, its
+     *  template's rotors, and its plugboard and fold. */
+    private static long weight(String key, String[] names, int size) {
+        long result = ENTRY_OVERHEAD + 2L * key.length();
+        for (String name : names) {
+            result += ROTOR_OVERHEAD + 2L * name.length();
+        }
+        return result + 12L * size;
+    }
+
+    /** A cached configuration. */
+    private static final class Entry {
+        /** An entry for TEMPLATE, occupying about WEIGHT bytes. */
+        Entry(Machine template, long weight) {
+            _template = template;
+            _weight = weight;
+        }
+
+        /** A machine set up from the configuration, which is never used
+         *  or modified. */
+        private final Machine _template;
+        /** Approximate bytes occupied. */
+        private final long _weight;
+    }
+
+    /** Approximate bytes of an entry beyond its key and contents. */
+    private static final int ENTRY_OVERHEAD = 400;
+
+    /** Approximate bytes of a template rotor beyond its name's
+     *  characters. */
+    private static final int ROTOR_OVERHEAD = 96;
+
+    /** Most bytes the entries may occupy. */
+    private final long _budget;
+
+    /** Approximate bytes occupied by the entries. */
+    private long _weight;
+
+    /** The entries, least recently used first. */
+    private final LinkedHashMap<String, Entry> _entries =
+        new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /** Counts of hits, misses and evictions. */
+    private long _hits, _misses, _evictions;
+}
@@ -0,0 +1,65 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import static enigma.TestUtils.*;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the SettingsCache class.
+ *  @author Anastasia Sukhorebraya
+ */
+public class SettingsCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testSettingsCache() {
+        SettingsCache cache = new SettingsCache(SettingsCache.BUDGET);
+        Machine plain = navalMachine();
+        Machine cached = navalMachine();
+        String[] settings = {
+            "B BETA III II I AXLE (YF) (ZH)",
+            "B  BETA III II I  PQRS  (YF)  (ZH) ",
+            "B BETA I II III AAAA",
+            "B BETA III II I AXLE (YF) (ZH)",
+        };
+        for (String line : settings) {
+            plain.startOver();
+            Main.setUp(plain, line);
+            cached.startOver();
+            cache.setUp(cached, line);
+            assertEquals(plain.convert("From his shoulder Hiawatha"),
+                         cached.convert("From his shoulder Hiawatha"));
+        }
+        assertEquals(2, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(2, cache.size());
+        String[] more = {
+            "B BETA III II I BXLE (YF) (ZH)",
+            "B BETA III II I AXL (YF) (ZH)",
+        };
+        for (String line : more) {
+            plain.startOver();
+            Main.setUp(plain, line);
+            cached.startOver();
+            cache.setUp(cached, line);
+            assertEquals(plain.convert("From his shoulder Hiawatha"),
+                         cached.convert("From his shoulder Hiawatha"));
+        }
+        assertEquals(3, cache.hits());
+        assertEquals(3, cache.misses());
+
+        SettingsCache tiny = new SettingsCache(2000);
+        for (String line : settings) {
+            cached.startOver();
+            tiny.setUp(cached, line);
+        }
+        assertEquals(1, tiny.size());
+        assertEquals(1, tiny.hits());
+        assertEquals(2, tiny.evictions());
+    }
+}
@@ -1,5 +1,6 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -126,4 +127,29 @@ class TestUtils {
         NAVALZ_MAP.put("Gamma", "EGTPLBOVFSINCUJZDXMRQAYWHK");
     }
 
+    /** Return a spec for the five-rotor naval machine used in the test
+     *  inputs, with rotors B, BETA, I, II and III. */
+    static MachineSpec navalSpec() {
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)));
+        all.add(new FixedRotor("BETA",
+                new Permutation(NAVALA.get("Beta"), UPPER)));
+        all.add(new MovingRotor("I",
+                new Permutation(NAVALA.get("I"), UPPER), "Q"));
+        all.add(new MovingRotor("II",
+                new Permutation(NAVALA.get("II"), UPPER), "E"));
+        all.add(new MovingRotor("III",
+                new Permutation(NAVALA.get("III"), UPPER), "V"));
+        return new MachineSpec(UPPER, 5, 3, all);
+    }
+
+    /** Return a machine built to navalSpec(), set to
+     *  B BETA I II III AAAA with an empty plugboard. */
+    static Machine navalMachine() {
+        Machine mach = navalSpec().newMachine();
+        mach.insertRotors(new String[] {"B", "BETA", "I", "II", "III"});
+        mach.setRotors("AAAA");
+        mach.setPlugboard(new Permutation("", UPPER));
+        return mach;
+    }
 }
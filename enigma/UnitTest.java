@@ -12,7 +12,15 @@ public class UnitTest {
     public static void main(String[] ignored) {
         textui.runClasses(PermutationTest.class,
                 MovingRotorTest.class,
-                MachineTest.class);
+                MachineTest.class,
+                ServerTest.class,
+                LineReaderTest.class,
+                PipelineTest.class,
+                MainTest.class,
+                SettingsCacheTest.class,
+                RotorLibraryTest.class,
+                ConfigReaderTest.class,
+                ConfigSnapshotTest.class);
     }
 
 }